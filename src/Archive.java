@@ -0,0 +1,606 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import static java.util.logging.Logger.getAnonymousLogger;
+
+/**
+ * An archive file holding many months of budgets. See SaveFormat.md.
+ * <p>
+ * Every month is an independent segment (a complete binary save), and an
+ * index at the end of the file lists the offset, length and totals of every
+ * segment. The index is read once when the archive is opened, so a month can
+ * be summarized without reading any segment, and read by mapping only its
+ * own segment.
+ * <p>
+ * Putting a month appends a new segment and a new index; a replaced segment
+ * stays in the file until <code>compact()</code> is called. If a put is cut
+ * short, the index before it is still the last complete one, and opening the
+ * archive looks back for it.
+ * <p>
+ * Totals over a range of months or dates are answered from the index. Only
+ * the first and last month of a date range, if they are not wholly in it,
+ * are looked at more closely, and then only their totals by day are read
+ * (see <code>getTotal(String, LocalDate, LocalDate)</code>), so the cost of
+ * a query grows with the months in range and not with the rows.
+ */
+public class Archive {
+
+    public static final String EXTENSION = "mba";
+
+    private static final byte[] MAGIC = { (byte) 0x89, 'M', 'B', 'A' };
+    private static final short VERSION = 1;
+    /**
+     * Size of the header: magic and version.
+     */
+    private static final int HEADER_SIZE = MAGIC.length + 2;
+    /**
+     * Size of the trailer: index offset and magic.
+     */
+    private static final int TRAILER_SIZE = 8 + MAGIC.length;
+    /**
+     * Bytes read at a time when looking back for a complete trailer.
+     */
+    private static final int SCAN_SIZE = 64 * 1024;
+
+    private final File file;
+    private final TreeMap<YearMonth, Summary> index = new TreeMap<>();
+    /**
+     * Total length of all segments in use, to tell when compacting pays off.
+     */
+    private long liveBytes = 0;
+    /**
+     * End of the last complete trailer. Anything after it is left over from
+     * a write that was cut short, and is written over by the next put.
+     */
+    private long end = 0;
+    /**
+     * Totals by category and day of the months read so far, see
+     * <code>getDayTotals()</code>.
+     */
+    private final Map<YearMonth, Map<String, long[]>> dayTotals =
+            new HashMap<>();
+
+    /**
+     * The totals of one month, kept in the archive index.
+     */
+    public static final class Summary {
+
+        private final YearMonth month;
+        private final long offset;
+        private final long length;
+        private final long budget;
+        private final long[] totals;
+        private final Map<String, Long> categoryTotals;
+
+        private Summary(YearMonth month, long offset, long length, long budget,
+                        long[] totals, Map<String, Long> categoryTotals) {
+            this.month = month;
+            this.offset = offset;
+            this.length = length;
+            this.budget = budget;
+            this.totals = totals;
+            this.categoryTotals = Collections.unmodifiableMap(categoryTotals);
+        }
+
+        public YearMonth getMonth() {
+            return month;
+        }
+
+        /**
+         * Get the budget of the month.
+         * @return Budget in cents.
+         */
+        public long getBudget() {
+            return budget;
+        }
+
+        /**
+         * Get the sum of the expenses of a BudgetList. Negative values mean
+         * money has been spent.
+         * @param which Which BudgetList.
+         * @return Sum in cents.
+         */
+        public long getTotal(BudgetHandler.Which which) {
+            return totals[which.getIndex()];
+        }
+
+        /**
+         * Get the sum of the expenses of both BudgetLists.
+         * @return Sum in cents.
+         */
+        public long getTotal() {
+            long total = 0;
+            for (long t : totals) {
+                total += t;
+            }
+            return total;
+        }
+
+        /**
+         * Get the sum of the expenses of both BudgetLists by category.
+         * @return Unmodifiable map of category to sum in cents.
+         */
+        public Map<String, Long> getCategoryTotals() {
+            return categoryTotals;
+        }
+
+        /**
+         * Get the sum of the expenses of both BudgetLists in one category.
+         * @param category Category name, or null for every category.
+         * @return Sum in cents.
+         */
+        public long getTotal(String category) {
+            return (category == null) ? getTotal()
+                    : categoryTotals.getOrDefault(category, 0L);
+        }
+    }
+
+    /**
+     * Open an archive, reading its index. The file is created when the first
+     * month is put if it does not exist.
+     * @param f Archive file.
+     * @throws IOException If the file exists but is not a valid archive.
+     */
+    public Archive(File f) throws IOException {
+        file = f;
+        if (f.exists() && f.length() > 0) {
+            readIndex();
+        }
+    }
+
+    /**
+     * Get the archive file.
+     * @return The archive file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the months in the archive.
+     * @return Months, in ascending order.
+     */
+    public List<YearMonth> getMonths() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * Check if the archive holds a month.
+     * @param month Month to check.
+     * @return True if the month is in the archive.
+     */
+    public boolean contains(YearMonth month) {
+        return index.containsKey(month);
+    }
+
+    /**
+     * Get the totals of a month without reading its segment.
+     * @param month Month to summarize.
+     * @return The Summary, or null if the month is not in the archive.
+     */
+    public Summary getSummary(YearMonth month) {
+        return index.get(month);
+    }
+
+    /**
+     * Get the totals of the months in a range without reading any segment.
+     * @param from First month, inclusive.
+     * @param to Last month, inclusive.
+     * @return Summaries of the months in the archive within the range.
+     */
+    public List<Summary> getSummaries(YearMonth from, YearMonth to) {
+        return new ArrayList<>(index.subMap(from, true, to, true).values());
+    }
+
+    /**
+     * Get the sum of the expenses of a category over a range of months
+     * without reading any segment.
+     * @param category Category name, or null for every category.
+     * @param from First month, inclusive.
+     * @param to Last month, inclusive.
+     * @return Sum in cents of both BudgetLists.
+     */
+    public long getTotal(String category, YearMonth from, YearMonth to) {
+        long total = 0;
+        if (!from.isAfter(to)) {
+            for (Summary s : index.subMap(from, true, to, true).values()) {
+                total += s.getTotal(category);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the sum of the expenses of a category for every month in a range
+     * without reading any segment.
+     * @param category Category name, or null for every category.
+     * @param from First month, inclusive.
+     * @param to Last month, inclusive.
+     * @return Sums in cents of both BudgetLists by month, only holding the
+     * months in the archive.
+     */
+    public SortedMap<YearMonth, Long> getMonthlyTotals(String category,
+            YearMonth from, YearMonth to) {
+        SortedMap<YearMonth, Long> totals = new TreeMap<>();
+        if (!from.isAfter(to)) {
+            for (Summary s : index.subMap(from, true, to, true).values()) {
+                totals.put(s.month, s.getTotal(category));
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Get the sum of the expenses of a category between two dates. Months
+     * wholly in the range are summed from the index; of the first and last
+     * month, only the totals by day are read. Rows without a known day are
+     * only counted when their whole month is in the range.
+     * @param category Category name, or null for every category.
+     * @param from First day, inclusive.
+     * @param to Last day, inclusive.
+     * @return Sum in cents of both BudgetLists.
+     * @throws IOException If the totals of a month cannot be read.
+     */
+    public long getTotal(String category, LocalDate from, LocalDate to)
+            throws IOException {
+        if (from.isAfter(to)) {
+            return 0;
+        }
+        YearMonth first = YearMonth.from(from);
+        YearMonth last = YearMonth.from(to);
+        long total = 0;
+        for (Summary s : index.subMap(first, true, last, true).values()) {
+            int fromDay = s.month.equals(first) ? from.getDayOfMonth() : 1;
+            int toDay = s.month.equals(last) ? to.getDayOfMonth()
+                    : s.month.lengthOfMonth();
+            if (fromDay == 1 && toDay == s.month.lengthOfMonth()) {
+                total += s.getTotal(category);
+                continue;
+            }
+            for (Map.Entry<String, long[]> e : getDayTotals(s).entrySet()) {
+                if (category == null || category.equals(e.getKey())) {
+                    for (int d = fromDay; d <= toDay; d++) {
+                        total += e.getValue()[d];
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the totals by category and day of a month, reading only the
+     * totals sections of its segment the first time.
+     */
+    private Map<String, long[]> getDayTotals(Summary s) throws IOException {
+        Map<String, long[]> totals = dayTotals.get(s.month);
+        if (totals == null) {
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                totals = BinarySave.readTotals(channel, s.offset);
+            }
+            dayTotals.put(s.month, totals);
+        }
+        return totals;
+    }
+
+    /**
+     * Read a month into a BudgetHandler. Only the segment of the month is
+     * mapped.
+     * @param month Month to read.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @throws IOException If the segment cannot be read.
+     * @throws IllegalArgumentException If the month is not in the archive.
+     */
+    public void readMonth(YearMonth month, BudgetHandler.Loader loader)
+            throws IOException {
+        Summary summary = index.get(month);
+        if (summary == null) {
+            throw new IllegalArgumentException(month + " is not archived.");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            BinarySave.read(channel.map(FileChannel.MapMode.READ_ONLY,
+                    summary.offset, summary.length), loader);
+        }
+    }
+
+    /**
+     * Add a month to the archive, replacing it if it is already there.
+     * @param month Month of the budget.
+     * @param snapshot BudgetSnapshot of the month.
+     * @throws IOException If the archive cannot be written.
+     */
+    public void putMonth(YearMonth month, BudgetSnapshot snapshot)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.put(MAGIC);
+                header.putShort(VERSION);
+                header.flip();
+                Utils.writeFully(channel, header);
+                end = HEADER_SIZE;
+            }
+            // Append after the old index. Until the new trailer is written
+            // in full, the old trailer is the last complete one, which
+            // readIndex() finds if the write is cut short.
+            long start = end;
+            channel.position(start);
+            long length = BinarySave.write(channel, snapshot);
+            Summary old = index.put(month, summarize(month, start, length,
+                    snapshot));
+            try {
+                writeIndex(channel, start + length, index);
+                // Drop what is left of a write that was cut short
+                channel.truncate(channel.position());
+                channel.force(false);
+            } catch (IOException e) {
+                // Keep the index in line with the last complete write
+                if (old != null) {
+                    index.put(month, old);
+                } else {
+                    index.remove(month);
+                }
+                throw e;
+            }
+            end = channel.position();
+            if (old != null) {
+                liveBytes -= old.length;
+            }
+            liveBytes += length;
+            dayTotals.remove(month);
+        }
+    }
+
+    /**
+     * Check if replaced segments take up more space than the live ones.
+     * @return True if <code>compact()</code> would at least halve the file.
+     */
+    public boolean needsCompaction() {
+        return file.length() > 2 * (liveBytes + HEADER_SIZE) + 64 * 1024;
+    }
+
+    /**
+     * Rewrite the archive without replaced segments. The new archive is
+     * written to a temporary file which then replaces the archive.
+     * @throws IOException If the archive cannot be rewritten.
+     */
+    public void compact() throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp",
+                file.getAbsoluteFile().getParentFile());
+        TreeMap<YearMonth, Summary> compacted = new TreeMap<>();
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temp.toPath(),
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC);
+            header.putShort(VERSION);
+            header.flip();
+            Utils.writeFully(out, header);
+            long position = HEADER_SIZE;
+            for (Summary s : index.values()) {
+                long copied = 0;
+                while (copied < s.length) {
+                    copied += in.transferTo(s.offset + copied,
+                            s.length - copied, out);
+                }
+                compacted.put(s.month, new Summary(s.month, position,
+                        s.length, s.budget, s.totals, s.categoryTotals));
+                position += s.length;
+            }
+            out.position(position);
+            writeIndex(out, position, compacted);
+            out.force(false);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        index.clear();
+        index.putAll(compacted);
+        end = file.length();
+    }
+
+    /**
+     * Compute the Summary of a month being archived.
+     */
+    private static Summary summarize(YearMonth month, long offset, long length,
+            BudgetSnapshot snapshot) {
+        long[] totals = new long[BudgetHandler.Which.values().length];
+        Map<String, Long> categoryTotals = new LinkedHashMap<>();
+        for (BudgetHandler.Which which : BudgetHandler.Which.values()) {
+            snapshot.forEachRow(which, row -> {
+                long cents = row.getCents();
+                totals[which.getIndex()] += cents;
+                categoryTotals.merge(row.getCategory(), cents, Long::sum);
+            });
+        }
+        return new Summary(month, offset, length,
+                snapshot.getBudgetAmount().getCents(), totals,
+                categoryTotals);
+    }
+
+    /**
+     * Write the index and trailer at the current position of the channel.
+     * @param indexOffset Current position, where the index starts.
+     * @param months Summaries to list in the index.
+     */
+    private static void writeIndex(FileChannel channel, long indexOffset,
+            Map<YearMonth, Summary> months) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(months.size());
+        for (Summary s : months.values()) {
+            data.writeInt(s.month.getYear());
+            data.writeByte(s.month.getMonthValue());
+            data.writeLong(s.offset);
+            data.writeLong(s.length);
+            data.writeLong(s.budget);
+            data.writeInt(s.totals.length);
+            for (long total : s.totals) {
+                data.writeLong(total);
+            }
+            data.writeInt(s.categoryTotals.size());
+            for (Map.Entry<String, Long> e : s.categoryTotals.entrySet()) {
+                data.writeUTF(e.getKey());
+                data.writeLong(e.getValue());
+            }
+        }
+        data.writeLong(indexOffset);
+        data.write(MAGIC);
+        data.flush();
+        Utils.writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Read the index pointed to by the last complete trailer. Normally that
+     * is the trailer at the end of the file, but if a put was cut short the
+     * file ends in a partial segment or index, and the trailer before it is
+     * used instead.
+     */
+    private void readIndex() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Archive is too short.");
+            }
+            ByteBuffer block = ByteBuffer.allocate(SCAN_SIZE + TRAILER_SIZE);
+            // Blocks overlap by a trailer, so no trailer is split between two
+            for (long blockEnd = size; blockEnd >= HEADER_SIZE + TRAILER_SIZE;
+                 blockEnd -= SCAN_SIZE) {
+                long blockStart = Math.max(HEADER_SIZE,
+                        blockEnd - SCAN_SIZE - TRAILER_SIZE);
+                block.clear();
+                block.limit((int) (blockEnd - blockStart));
+                Utils.readFully(channel, block, blockStart);
+                for (int i = block.limit() - TRAILER_SIZE; i >= 0; i--) {
+                    if (isTrailer(block, i) &&
+                            readIndex(channel, blockStart + i,
+                                    block.getLong(i))) {
+                        end = blockStart + i + TRAILER_SIZE;
+                        if (end < size) {
+                            getAnonymousLogger().log(Level.WARNING,
+                                    "Ignoring " + (size - end) + " bytes " +
+                                    "after the last complete archive index.");
+                        }
+                        return;
+                    }
+                }
+            }
+            throw new IOException("Archive is damaged or not an archive: " +
+                    "trailer not found.");
+        }
+    }
+
+    /**
+     * Check if a buffer holds the magic of a trailer at a position.
+     */
+    private static boolean isTrailer(ByteBuffer block, int position) {
+        for (int m = 0; m < MAGIC.length; m++) {
+            if (block.get(position + 8 + m) != MAGIC[m]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read an index that ends at a trailer.
+     * @param trailer Position of the trailer.
+     * @param indexOffset Offset of the index, as written in the trailer.
+     * @return True if the index was read, false if it is not valid.
+     */
+    private boolean readIndex(FileChannel channel, long trailer,
+            long indexOffset) throws IOException {
+        if (indexOffset < HEADER_SIZE || indexOffset > trailer ||
+                trailer - indexOffset > Integer.MAX_VALUE) {
+            return false;
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) (trailer - indexOffset));
+        Utils.readFully(channel, buf, indexOffset);
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(buf.array()));
+        TreeMap<YearMonth, Summary> months = new TreeMap<>();
+        long live = 0;
+        try {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                YearMonth month = YearMonth.of(in.readInt(), in.readByte());
+                long offset = in.readLong();
+                long length = in.readLong();
+                long budget = in.readLong();
+                int totalCount = in.readInt();
+                if (totalCount < 0 || totalCount > in.available() / 8) {
+                    return false;
+                }
+                long[] totals = new long[totalCount];
+                for (int t = 0; t < totals.length; t++) {
+                    totals[t] = in.readLong();
+                }
+                int categories = in.readInt();
+                if (categories < 0 || categories > in.available()) {
+                    return false;
+                }
+                Map<String, Long> categoryTotals =
+                        new LinkedHashMap<>(categories * 2);
+                for (int c = 0; c < categories; c++) {
+                    categoryTotals.put(in.readUTF(), in.readLong());
+                }
+                if (offset < HEADER_SIZE || length < 0 ||
+                        offset + length > indexOffset) {
+                    return false;
+                }
+                months.put(month, new Summary(month, offset, length, budget,
+                        totals, categoryTotals));
+                live += length;
+            }
+            if (in.available() > 0) {
+                return false;
+            }
+        } catch (EOFException | RuntimeException e) { // Invalid month
+            getAnonymousLogger().log(Level.FINE, "Bad archive index", e);
+            return false;
+        }
+        index.putAll(months);
+        liveBytes = live;
+        return true;
+    }
+
+}
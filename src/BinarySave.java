@@ -0,0 +1,629 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import static java.util.logging.Logger.getAnonymousLogger;
+
+/**
+ * Reads and writes the binary (version 2) save format. See SaveFormat.md.
+ * <p>
+ * A v2 file is a small header followed by a section directory. Every
+ * BudgetList is stored as column blocks (dates, category ids, name offsets,
+ * amounts in cents and a name blob), so a reader can map the file and pick
+ * out values without parsing any text.
+ */
+public final class BinarySave {
+
+    /**
+     * First bytes of every v2 file. The leading byte is not printable, so a
+     * v1 text file can never start with it.
+     */
+    public static final byte[] MAGIC = { (byte) 0x89, 'M', 'B', 'F' };
+    public static final short VERSION = 2;
+
+    /**
+     * Section holding the category dictionary.
+     */
+    static final int TAG_CATEGORIES = 1;
+    /**
+     * Section holding the columns of one BudgetList.
+     */
+    static final int TAG_LIST = 2;
+    /**
+     * Section holding the totals of one BudgetList by category and day.
+     */
+    static final int TAG_TOTALS = 3;
+
+    /**
+     * Days in the totals section, as in the totals of a BudgetList.
+     */
+    static final int DAYS = BudgetList.DAYS;
+
+    /**
+     * Size of the fixed header: magic, version, flags, budget, section count.
+     */
+    private static final int HEADER_SIZE = MAGIC.length + 2 + 2 + 8 + 4;
+    /**
+     * Size of one section directory entry: tag, offset, length.
+     */
+    private static final int ENTRY_SIZE = 4 + 8 + 8;
+    /**
+     * Size of the fixed start of a categories section: listed, count.
+     */
+    private static final int CATEGORIES_HEADER = 4 + 4;
+    /**
+     * Size of the fixed start of a list section: which, count, total.
+     */
+    private static final int LIST_HEADER = 4 + 4 + 8;
+    /**
+     * Size of the fixed start of a totals section: which, category count.
+     */
+    private static final int TOTALS_HEADER = 4 + 4;
+
+    private BinarySave() { }
+
+    /**
+     * Check if a file starts with the v2 magic bytes.
+     * @param f File to check.
+     * @return True if the file is a v2 save, false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isBinary(File f) throws IOException {
+        return Utils.startsWith(f, MAGIC);
+    }
+
+    /**
+     * Write a snapshot to a file in the v2 format.
+     * @param f File to write.
+     * @param snapshot BudgetSnapshot to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(File f, BudgetSnapshot snapshot)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, snapshot);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Write a snapshot in the v2 format at the current position of a channel.
+     * Offsets in the image are relative to its start, so it can be embedded
+     * in a larger file (see Archive).
+     * @param channel Channel to write to.
+     * @param snapshot BudgetSnapshot to write.
+     * @return Amount of bytes written.
+     * @throws IOException If the channel cannot be written.
+     */
+    public static long write(FileChannel channel, BudgetSnapshot snapshot)
+            throws IOException {
+        List<String> cats = snapshot.getCategories();
+        HashMap<String, Integer> ids = new HashMap<>(cats.size() * 2);
+        for (String cat : cats) {
+            ids.putIfAbsent(cat, ids.size());
+        }
+
+        // Encode the lists first: rows may use categories not in the list
+        BudgetHandler.Which[] whiches = BudgetHandler.Which.values();
+        ByteBuffer[] lists = new ByteBuffer[whiches.length];
+        for (BudgetHandler.Which which : whiches) {
+            lists[which.getIndex()] = encodeList(which, snapshot, ids);
+        }
+        ByteBuffer categories = encodeCategories(ids, cats.size());
+        ByteBuffer[] totals = new ByteBuffer[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            totals[i] = encodeTotals(lists[i], ids.size());
+        }
+
+        int sections = 1 + lists.length + totals.length;
+        ByteBuffer header = ByteBuffer.allocate(
+                HEADER_SIZE + sections * ENTRY_SIZE);
+        header.put(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) 0); // flags, unused
+        header.putLong(snapshot.getBudgetAmount().getCents());
+        header.putInt(sections);
+        long offset = header.capacity();
+        putEntry(header, TAG_CATEGORIES, offset, categories.remaining());
+        offset += categories.remaining();
+        for (ByteBuffer list : lists) {
+            putEntry(header, TAG_LIST, offset, list.remaining());
+            offset += list.remaining();
+        }
+        for (ByteBuffer total : totals) {
+            putEntry(header, TAG_TOTALS, offset, total.remaining());
+            offset += total.remaining();
+        }
+        header.flip();
+
+        Utils.writeFully(channel, header);
+        Utils.writeFully(channel, categories);
+        for (ByteBuffer list : lists) {
+            Utils.writeFully(channel, list);
+        }
+        for (ByteBuffer total : totals) {
+            Utils.writeFully(channel, total);
+        }
+        return offset;
+    }
+
+    /**
+     * Read a v2 file into a BudgetHandler. The file is memory-mapped rather
+     * than read through a stream.
+     * @param f File to read.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @throws IOException If the file cannot be read or is not a v2 save.
+     */
+    public static void read(File f, BudgetHandler.Loader loader)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            read(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()), loader);
+        }
+    }
+
+    /**
+     * Read a v2 image into a BudgetHandler.
+     * @param buf Buffer containing the whole v2 image.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @throws IOException If the buffer is not a valid v2 image.
+     */
+    public static void read(ByteBuffer buf, BudgetHandler.Loader loader)
+            throws IOException {
+        buf = buf.slice(); // Section offsets are relative to the image
+        if (buf.remaining() < HEADER_SIZE) {
+            throw new IOException("Save file is too short.");
+        }
+        for (byte b : MAGIC) {
+            if (buf.get() != b) {
+                throw new IOException("Save file is not a binary save.");
+            }
+        }
+        short version = buf.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported save version " + version);
+        }
+        buf.getShort(); // flags
+        loader.setBudget(Money.ofCents(buf.getLong()));
+        int sections = buf.getInt();
+        if (sections < 0 || sections > buf.remaining() / ENTRY_SIZE) {
+            throw new IOException("Corrupt section directory.");
+        }
+
+        String[] dictionary = new String[0];
+        for (int i = 0; i < sections; i++) {
+            int tag = buf.getInt();
+            ByteBuffer section = slice(buf, buf.getLong(), buf.getLong());
+            switch (tag) {
+                case TAG_CATEGORIES:
+                    dictionary = decodeCategories(section);
+                    loader.setCategories(Arrays.copyOf(
+                            dictionary, section.getInt(0)));
+                    break;
+                case TAG_LIST:
+                    decodeList(section, dictionary, loader);
+                    break;
+                case TAG_TOTALS: // Only needed by open()
+                    break;
+                default: // Unknown sections are skipped
+                    getAnonymousLogger().log(Level.WARNING,
+                            "Skipping unknown save section " + tag);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Open a v2 file without reading its rows. The budget, categories and
+     * totals are read right away, while every BudgetList is given
+     * PagedRows that read the rows from the file when they are needed.
+     * @param f File to open.
+     * @param loader Loader of the BudgetHandler to set the values of. Its
+     *               BudgetLists must be empty.
+     * @throws IOException If the file cannot be read or is not a v2 save.
+     */
+    public static void open(File f, BudgetHandler.Loader loader)
+            throws IOException {
+        long[][][] totals = new long[BudgetHandler.Which.values().length][][];
+        long[] listOffsets = new long[totals.length];
+        Arrays.fill(listOffsets, -1);
+        String[] dictionary = new String[0];
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel, 0);
+            loader.setBudget(Money.ofCents(header.getLong()));
+            ByteBuffer directory = readDirectory(channel, 0, header.getInt());
+            while (directory.hasRemaining()) {
+                int tag = directory.getInt();
+                long offset = directory.getLong();
+                long length = directory.getLong();
+                checkSection(offset, length, channel.size());
+                switch (tag) {
+                    case TAG_CATEGORIES:
+                        ByteBuffer section = read(channel, offset,
+                                (int) length);
+                        dictionary = decodeCategories(section);
+                        loader.setCategories(Arrays.copyOf(
+                                dictionary, section.getInt(0)));
+                        break;
+                    case TAG_LIST:
+                        checkLength(length, LIST_HEADER, "list");
+                        int which = read(channel, offset, 4).getInt();
+                        listOffsets[BudgetHandler.Which.get(which)
+                                .getIndex()] = offset;
+                        break;
+                    case TAG_TOTALS:
+                        ByteBuffer buf = read(channel, offset, (int) length);
+                        long[][] cube = decodeTotals(buf);
+                        totals[BudgetHandler.Which.get(buf.getInt(0))
+                                .getIndex()] = cube;
+                        break;
+                    default: // Unknown sections are skipped
+                        break;
+                }
+            }
+        }
+        for (BudgetHandler.Which which : BudgetHandler.Which.values()) {
+            int i = which.getIndex();
+            if (listOffsets[i] >= 0) {
+                loader.page(which, new PagedRows(f, listOffsets[i],
+                        dictionary, totals[i]));
+            }
+        }
+    }
+
+    /**
+     * Read the totals by category and day of a v2 image without reading any
+     * row.
+     * @param channel Channel to read from.
+     * @param position Position of the image in the channel.
+     * @return Cents by category name and then by day (<code>DAYS</code> of
+     * them), summed over every BudgetList.
+     * @throws IOException If the image cannot be read or is not valid.
+     */
+    static Map<String, long[]> readTotals(FileChannel channel, long position)
+            throws IOException {
+        ByteBuffer header = readHeader(channel, position);
+        header.getLong(); // budget
+        ByteBuffer directory = readDirectory(channel, position,
+                header.getInt());
+        String[] dictionary = new String[0];
+        List<long[][]> cubes = new ArrayList<>();
+        while (directory.hasRemaining()) {
+            int tag = directory.getInt();
+            long offset = directory.getLong();
+            long length = directory.getLong();
+            checkSection(offset, length, channel.size() - position);
+            offset += position;
+            if (tag == TAG_CATEGORIES) {
+                dictionary = decodeCategories(read(channel, offset,
+                        (int) length));
+            } else if (tag == TAG_TOTALS) {
+                cubes.add(decodeTotals(read(channel, offset, (int) length)));
+            }
+        }
+        Map<String, long[]> totals = new HashMap<>();
+        for (long[][] cube : cubes) {
+            for (int id = 0; id < cube.length && id < dictionary.length;
+                 id++) {
+                long[] days = totals.computeIfAbsent(dictionary[id],
+                        c -> new long[DAYS]);
+                for (int d = 0; d < DAYS; d++) {
+                    days[d] += cube[id][d];
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Read and check the fixed header of a v2 image.
+     * @return The header, positioned at the budget.
+     */
+    private static ByteBuffer readHeader(FileChannel channel, long position)
+            throws IOException {
+        ByteBuffer header = read(channel, position, HEADER_SIZE);
+        for (byte b : MAGIC) {
+            if (header.get() != b) {
+                throw new IOException("Save file is not a binary save.");
+            }
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported save version " + version);
+        }
+        header.getShort(); // flags
+        return header;
+    }
+
+    /**
+     * Read the section directory of a v2 image.
+     * @param sections Section count from the header.
+     */
+    private static ByteBuffer readDirectory(FileChannel channel,
+            long position, int sections) throws IOException {
+        if (sections < 0 || sections > (channel.size() - position -
+                HEADER_SIZE) / ENTRY_SIZE) {
+            throw new IOException("Corrupt section directory.");
+        }
+        return read(channel, position + HEADER_SIZE, sections * ENTRY_SIZE);
+    }
+
+    /**
+     * Encode the category dictionary. The first <code>listed</code> entries
+     * are the CategoryList; the rest are only used by rows.
+     */
+    private static ByteBuffer encodeCategories(HashMap<String, Integer> ids,
+            int listed) {
+        byte[][] names = new byte[ids.size()][];
+        int size = 4 + 4;
+        for (Map.Entry<String, Integer> e : ids.entrySet()) {
+            names[e.getValue()] = e.getKey().getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[e.getValue()].length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(Math.min(listed, names.length));
+        buf.putInt(names.length);
+        for (byte[] name : names) {
+            buf.putInt(name.length);
+            buf.put(name);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static String[] decodeCategories(ByteBuffer buf)
+            throws IOException {
+        checkLength(buf.remaining(), CATEGORIES_HEADER, "category");
+        int listed = buf.getInt();
+        int count = buf.getInt();
+        // Every name takes at least its length
+        if (count < 0 || count > buf.remaining() / 4 || listed < 0 ||
+                listed > count) {
+            throw new IOException("Corrupt category section.");
+        }
+        String[] cats = new String[count];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < cats.length; i++) {
+            int length = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                throw new IOException("Corrupt category section.");
+            }
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            buf.get(bytes, 0, length);
+            cats[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return cats;
+    }
+
+    /**
+     * Encode the rows of a list as column blocks:
+     * which, row count, total cents, dates, category ids, name offsets,
+     * amounts and the name blob.
+     */
+    private static ByteBuffer encodeList(BudgetHandler.Which which,
+            BudgetSnapshot snapshot, HashMap<String, Integer> ids) {
+        int count = snapshot.getRowCount(which);
+        byte[][] names = new byte[count][];
+        int[] dates = new int[count];
+        int[] categories = new int[count];
+        long[] cents = new long[count];
+        snapshot.forEachRow(which, row -> {
+            int r = row.getIndex();
+            names[r] = row.getName().getBytes(StandardCharsets.UTF_8);
+            dates[r] = row.getPackedDate();
+            categories[r] = ids.computeIfAbsent(row.getCategory(),
+                    c -> ids.size());
+            cents[r] = row.getCents();
+        });
+        int namesLength = 0;
+        long total = 0;
+        int unpacked = 0;
+        for (int r = 0; r < count; r++) {
+            namesLength += names[r].length;
+            total += cents[r];
+            if (dates[r] == FormattedDate.UNPACKED) {
+                dates[r] = 0;
+                unpacked++;
+            }
+        }
+        if (unpacked > 0) {
+            getAnonymousLogger().log(Level.WARNING, "Saving " + unpacked +
+                    " dates that are not in the date format as unknown.");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(4 + 4 + 8 + count * 4 +
+                count * 4 + (count + 1) * 4 + count * 8 + namesLength);
+        buf.putInt(which.getIndex());
+        buf.putInt(count);
+        buf.putLong(total);
+        for (int date : dates) {
+            buf.putInt(date);
+        }
+        for (int id : categories) {
+            buf.putInt(id);
+        }
+        int offset = 0;
+        for (byte[] name : names) {
+            buf.putInt(offset);
+            offset += name.length;
+        }
+        buf.putInt(offset);
+        for (long c : cents) {
+            buf.putLong(c);
+        }
+        for (byte[] name : names) {
+            buf.put(name);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Encode the totals of an encoded list by category id and day:
+     * which, category count, then the cents of every day of every category.
+     */
+    private static ByteBuffer encodeTotals(ByteBuffer list, int categories) {
+        int which = list.getInt(0);
+        int count = list.getInt(4);
+        int dates = 4 + 4 + 8;
+        int ids = dates + count * 4;
+        int amounts = ids + count * 4 + (count + 1) * 4;
+        long[][] cube = new long[categories][DAYS];
+        for (int r = 0; r < count; r++) {
+            int day = list.getInt(dates + r * 4) & 0xFF;
+            cube[list.getInt(ids + r * 4)][day < DAYS ? day : 0] +=
+                    list.getLong(amounts + r * 8);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(4 + 4 + categories * DAYS * 8);
+        buf.putInt(which);
+        buf.putInt(categories);
+        for (long[] days : cube) {
+            for (long cents : days) {
+                buf.putLong(cents);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Decode a totals section.
+     * @return Cents by category id and day.
+     */
+    static long[][] decodeTotals(ByteBuffer buf) throws IOException {
+        checkLength(buf.remaining(), TOTALS_HEADER, "totals");
+        buf.getInt(); // which
+        int categories = buf.getInt();
+        if (categories < 0 ||
+                (long) categories * DAYS * 8 > buf.remaining()) {
+            throw new IOException("Corrupt totals section.");
+        }
+        long[][] cube = new long[categories][DAYS];
+        for (long[] days : cube) {
+            for (int d = 0; d < DAYS; d++) {
+                days[d] = buf.getLong();
+            }
+        }
+        return cube;
+    }
+
+    private static void decodeList(ByteBuffer buf, String[] dictionary,
+            BudgetHandler.Loader loader) throws IOException {
+        checkLength(buf.remaining(), LIST_HEADER, "list");
+        BudgetHandler.Which which = BudgetHandler.Which.get(buf.getInt());
+        int count = buf.getInt();
+        buf.getLong(); // total, only needed by summaries
+        // In long, so corrupt counts cannot overflow past the check
+        long end = buf.position() + count * (4L + 4 + 4 + 8) + 4;
+        if (count < 0 || end > buf.limit()) {
+            throw new IOException("Corrupt list section.");
+        }
+        int dates = buf.position();
+        int categories = dates + count * 4;
+        int offsets = categories + count * 4;
+        int amounts = offsets + (count + 1) * 4;
+        int names = amounts + count * 8;
+
+        // Dates repeat a lot, so only format each one once
+        HashMap<Integer, String> dateStrings = new HashMap<>(64);
+        ByteBuffer nameBuf = buf.duplicate();
+        byte[] bytes = new byte[64];
+        for (int r = 0; r < count; r++) {
+            int packed = buf.getInt(dates + r * 4);
+            String date = dateStrings.computeIfAbsent(packed,
+                    FormattedDate::unpack);
+            int id = buf.getInt(categories + r * 4);
+            String cat = (id >= 0 && id < dictionary.length)
+                    ? dictionary[id] : "";
+            long start = buf.getInt(offsets + r * 4);
+            long stop = buf.getInt(offsets + (r + 1) * 4);
+            if (start < 0 || stop < start || names + stop > buf.limit()) {
+                throw new IOException("Corrupt name offsets.");
+            }
+            int length = (int) (stop - start);
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            nameBuf.position(names + (int) start);
+            nameBuf.get(bytes, 0, length);
+            loader.add(which, new BudgetRow(date, cat,
+                    new String(bytes, 0, length, StandardCharsets.UTF_8),
+                    buf.getLong(amounts + r * 8)));
+        }
+    }
+
+    private static void putEntry(ByteBuffer header, int tag, long offset,
+            long length) {
+        header.putInt(tag);
+        header.putLong(offset);
+        header.putLong(length);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, long offset, long length)
+            throws IOException {
+        checkSection(offset, length, buf.limit());
+        ByteBuffer section = buf.duplicate();
+        section.position((int) offset);
+        section.limit((int) (offset + length));
+        return section.slice();
+    }
+
+    /**
+     * Check that a section lies within an image. The sums are not taken, so
+     * corrupt offsets and lengths cannot overflow past the check.
+     * @param offset Offset of the section.
+     * @param length Length of the section.
+     * @param size Size of the image.
+     * @throws IOException If the section is not within the image or is too
+     * long to read into a buffer.
+     */
+    private static void checkSection(long offset, long length, long size)
+            throws IOException {
+        if (offset < 0 || length < 0 || offset > size ||
+                length > size - offset || length > Integer.MAX_VALUE) {
+            throw new IOException("Save section out of bounds.");
+        }
+    }
+
+    /**
+     * Check that a section is long enough for its fixed start.
+     * @param length Length of the section.
+     * @param needed Size of the fixed start.
+     * @param name Name of the section for the error message.
+     * @throws IOException If the section is too short.
+     */
+    private static void checkLength(long length, int needed, String name)
+            throws IOException {
+        if (length < needed) {
+            throw new IOException("Corrupt " + name + " section.");
+        }
+    }
+
+    /**
+     * Read part of a file into a new buffer.
+     * @return The buffer, flipped.
+     */
+    static ByteBuffer read(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        Utils.readFully(channel, buf, position);
+        buf.flip();
+        return buf;
+    }
+
+}
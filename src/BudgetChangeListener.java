@@ -0,0 +1,14 @@
+import java.util.List;
+
+/**
+ * Listener for changes made to the budget, told what changed.
+ */
+public interface BudgetChangeListener {
+
+    /**
+     * Called on the event thread after the budget changed. Changes are
+     * coalesced, so one call can report several of them.
+     * @param events Every change since the last call, in order. Not empty.
+     */
+    void budgetChanged(List<BudgetEvent> events);
+}
@@ -0,0 +1,205 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A change to a BudgetHandler, given to BudgetChangeListeners.
+ * <p>
+ * Row events say which rows of which BudgetList changed and hold the rows
+ * before and after the change, so a listener can apply the change instead
+ * of reading the whole budget again. Changes that are too large to describe
+ * (loading a file, sorting, clearing) are LIST_CHANGED or CHANGED events,
+ * after which everything should be read again.
+ */
+public final class BudgetEvent {
+
+    /**
+     * Kind of change.
+     */
+    public enum Type {
+        ROWS_INSERTED, // Rows added to a BudgetList
+        ROWS_UPDATED, // Values of rows changed
+        ROWS_REMOVED, // Rows removed from a BudgetList
+        LIST_CHANGED, // Anything in a BudgetList may have changed
+        BUDGET_CHANGED, // The budget amount changed
+        CATEGORIES_CHANGED, // The CategoryList changed
+        CHANGED // Anything may have changed, see BudgetHandler.update()
+    }
+
+    private final Type type;
+    private final BudgetHandler.Which which;
+    private final int firstRow;
+    private final int lastRow;
+    private final int column;
+    private final List<BudgetRow> oldRows;
+    private final List<BudgetRow> newRows;
+    private final Money oldBudget;
+    private final Money newBudget;
+
+    private BudgetEvent(Type type, BudgetHandler.Which which, int firstRow,
+                        int lastRow, int column, List<BudgetRow> oldRows,
+                        List<BudgetRow> newRows, Money oldBudget,
+                        Money newBudget) {
+        this.type = type;
+        this.which = which;
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+        this.column = column;
+        this.oldRows = oldRows;
+        this.newRows = newRows;
+        this.oldBudget = oldBudget;
+        this.newBudget = newBudget;
+    }
+
+    /**
+     * Create an event for rows inserted, updated or removed.
+     * @param type ROWS_INSERTED, ROWS_UPDATED or ROWS_REMOVED.
+     * @param which Which BudgetList.
+     * @param e Event of the BudgetList.
+     * @return A new BudgetEvent.
+     */
+    static BudgetEvent rows(Type type, BudgetHandler.Which which,
+                            BudgetList.RowsEvent e) {
+        return new BudgetEvent(type, which, e.getFirstRow(), e.getLastRow(),
+                e.getColumn(), e.getOldRows(), e.getNewRows(), null, null);
+    }
+
+    /**
+     * Create an event for a BudgetList that changed in an unknown way.
+     * @param which Which BudgetList.
+     * @return A new BudgetEvent.
+     */
+    static BudgetEvent listChanged(BudgetHandler.Which which) {
+        return new BudgetEvent(Type.LIST_CHANGED, which, -1, -1, -1,
+                Collections.emptyList(), Collections.emptyList(), null, null);
+    }
+
+    /**
+     * Create an event for a change of the budget amount.
+     * @param oldBudget Budget before the change.
+     * @param newBudget Budget after the change.
+     * @return A new BudgetEvent.
+     */
+    static BudgetEvent budgetChanged(Money oldBudget, Money newBudget) {
+        return new BudgetEvent(Type.BUDGET_CHANGED, null, -1, -1, -1,
+                Collections.emptyList(), Collections.emptyList(), oldBudget,
+                newBudget);
+    }
+
+    /**
+     * Create an event without any details, of type CATEGORIES_CHANGED or
+     * CHANGED.
+     * @param type Type of the event.
+     * @return A new BudgetEvent.
+     */
+    static BudgetEvent of(Type type) {
+        return new BudgetEvent(type, null, -1, -1, -1,
+                Collections.emptyList(), Collections.emptyList(), null, null);
+    }
+
+    /**
+     * Get the kind of change.
+     * @return Type of the event.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the BudgetList that changed.
+     * @return Which BudgetList, or null if the event is not about rows.
+     */
+    public BudgetHandler.Which getWhich() {
+        return which;
+    }
+
+    /**
+     * Get the first row that changed. For removed rows, this is the index
+     * they had.
+     * @return Row index, or -1 if the event is not about rows.
+     */
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    /**
+     * Get the last row that changed, inclusive.
+     * @return Row index, or -1 if the event is not about rows.
+     */
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    /**
+     * Get the column that changed, see <code>BudgetList</code>.
+     * @return Column index, or TableModelEvent.ALL_COLUMNS (-1) if every
+     * column may have changed.
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the rows before the change.
+     * @return Unmodifiable list of the removed or updated rows, in order.
+     */
+    public List<BudgetRow> getOldRows() {
+        return oldRows;
+    }
+
+    /**
+     * Get the rows after the change.
+     * @return Unmodifiable list of the inserted or updated rows, in order.
+     */
+    public List<BudgetRow> getNewRows() {
+        return newRows;
+    }
+
+    /**
+     * Get the budget before a BUDGET_CHANGED event.
+     * @return The old budget, or null for other events.
+     */
+    public Money getOldBudget() {
+        return oldBudget;
+    }
+
+    /**
+     * Get the budget after a BUDGET_CHANGED event.
+     * @return The new budget, or null for other events.
+     */
+    public Money getNewBudget() {
+        return newBudget;
+    }
+
+    /**
+     * Check if the event is about single rows, so it can be applied without
+     * reading the budget again.
+     * @return True for ROWS_INSERTED, ROWS_UPDATED and ROWS_REMOVED.
+     */
+    public boolean isRowChange() {
+        return type == Type.ROWS_INSERTED || type == Type.ROWS_UPDATED ||
+                type == Type.ROWS_REMOVED;
+    }
+
+    /**
+     * Get the change of the sum of the expenses made by a row event.
+     * @return New minus old amount of the rows, in cents; 0 if the event is
+     * not about rows.
+     */
+    public long getCentsDelta() {
+        long delta = 0;
+        for (BudgetRow row : newRows) {
+            delta += row.getCents();
+        }
+        for (BudgetRow row : oldRows) {
+            delta -= row.getCents();
+        }
+        return delta;
+    }
+
+    @Override
+    public String toString() {
+        return type + ((which != null) ? " " + which.getName() + " " +
+                firstRow + "-" + lastRow : "");
+    }
+
+}
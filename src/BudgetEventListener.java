@@ -1,6 +1,14 @@
+import java.util.List;
+
 /**
- * Listener for changes made to the budget.
+ * Listener for changes made to the budget, for listeners that do not need
+ * to know what changed. See BudgetChangeListener.
  */
-public interface BudgetEventListener {
+public interface BudgetEventListener extends BudgetChangeListener {
     void eventOccurred();
+
+    @Override
+    default void budgetChanged(List<BudgetEvent> events) {
+        eventOccurred();
+    }
 }
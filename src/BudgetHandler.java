@@ -1,4 +1,6 @@
+import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
+import java.io.IOException;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,11 +49,28 @@ public class BudgetHandler {
     private CategoryList categories;
 
     private BudgetList[] lists;
-    private List<BudgetEventListener> listeners = new ArrayList<>(3);
+    private List<BudgetChangeListener> listeners = new ArrayList<>(3);
     /**
      * Amount of money available in the budget.
      */
-    private double budget = 0;
+    private Money budget = Money.ZERO;
+
+    /**
+     * Changed on every change to the lists, categories or budget, see
+     * <code>getVersion()</code>.
+     */
+    private long version = 0;
+    private BudgetSnapshot lastSnapshot;
+    private BudgetSnapshot lastTotals;
+
+    /**
+     * Budget events are coalesced: they are kept here, and the listeners are
+     * notified once, later in the event thread or when the outermost batch
+     * ends.
+     */
+    private List<BudgetEvent> pendingEvents = new ArrayList<>();
+    private boolean dispatchScheduled = false;
+    private int batchDepth = 0;
 
     /**
      * Creates a BudgetHandler with given BudgetLists.
@@ -63,6 +82,9 @@ public class BudgetHandler {
                          BudgetList variable) {
         categories = new CategoryList(defaultCats);
         lists = new BudgetList[]{fixed, variable};
+        for (BudgetList list : lists) {
+            list.setCategoryList(categories);
+        }
         addListeners();
         update();
     }
@@ -97,47 +119,130 @@ public class BudgetHandler {
      * @param cat
      */
     public void removeCategory(String cat) {
-        if (!categories.contains(cat)) {
+        if (categories.contains(cat)) {
             categories.remove(cat);
         }
     }
 
     /**
-     * Set to a new BudgetHandler.
+     * Set to the budget, categories and rows of another BudgetHandler. The
+     * rows are copied into the lists of this BudgetHandler, which keeps its
+     * own listeners and version, so later changes to either BudgetHandler
+     * do not reach the other. Rows the other BudgetHandler pages from a save
+     * are opened again rather than read. Listeners are notified once.
+     * @param other BudgetHandler to copy.
+     * @throws IOException If paged rows cannot be opened again.
      */
-    public void copy(BudgetHandler other) {
-        lists = other.lists;
-        listeners = other.listeners;
-        budget = other.budget;
-        Logger.getAnonymousLogger().info(
-                "Method copy(): lists = " + Arrays.toString(lists) +
-                        ",  listeners = " + listeners.toString() + ", budget = "
-                + budget
-        );
+    public void copy(BudgetHandler other) throws IOException {
+        PagedRows[] paged = new PagedRows[lists.length];
+        try {
+            for (int i = 0; i < lists.length; i++) {
+                paged[i] = other.lists[i].reopenPagedRows();
+            }
+        } catch (IOException e) {
+            for (PagedRows rows : paged) {
+                if (rows != null) {
+                    rows.close();
+                }
+            }
+            throw e;
+        }
+        batch(() -> {
+            clear();
+            try (Loader loader = load()) {
+                loader.setCategories(other.categories.toArray());
+                loader.setBudget(other.budget);
+                for (Which which : Which.values()) {
+                    if (paged[which.index] != null) {
+                        loader.page(which, paged[which.index]);
+                    } else {
+                        loader.addAll(which, Arrays.asList(
+                                other.lists[which.index].getRows()));
+                    }
+                }
+            }
+        });
     }
 
     /**
      * Add listeners to the budget lists.
      */
     private void addListeners() {
-        for (BudgetList list : lists) {
-            list.addTableModelListener(e -> {
-                // TODO: Add more budget-related stuff
-                if (e.getType() == TableModelEvent.UPDATE ||
-                        e.getType() == TableModelEvent.DELETE) {
-                    //notifyListeners();
-                    update();
-                }
-            });
+        categories.addTypesChangeListener(() ->
+                fire(BudgetEvent.of(BudgetEvent.Type.CATEGORIES_CHANGED)));
+        for (Which which : Which.values()) {
+            lists[which.index].addTableModelListener(e ->
+                    fire(toBudgetEvent(which, e)));
+        }
+    }
+
+    /**
+     * Turn an event of a BudgetList into a BudgetEvent. Only RowsEvents say
+     * what changed; any other event changes the whole list.
+     */
+    private static BudgetEvent toBudgetEvent(Which which, TableModelEvent e) {
+        if (!(e instanceof BudgetList.RowsEvent)) {
+            return BudgetEvent.listChanged(which);
         }
+        BudgetEvent.Type type;
+        switch (e.getType()) {
+            case TableModelEvent.INSERT:
+                type = BudgetEvent.Type.ROWS_INSERTED;
+                break;
+            case TableModelEvent.DELETE:
+                type = BudgetEvent.Type.ROWS_REMOVED;
+                break;
+            default:
+                type = BudgetEvent.Type.ROWS_UPDATED;
+                break;
+        }
+        return BudgetEvent.rows(type, which, (BudgetList.RowsEvent) e);
     }
 
     /**
-     * Notify all listeners that a budget event occurred.
+     * Record a change and schedule notifying the listeners of it.
      */
-    private void notifyListeners() {
-        for (BudgetEventListener listener : listeners) {
-            listener.eventOccurred();
+    private void fire(BudgetEvent event) {
+        version++;
+        pendingEvents.add(event);
+        if (batchDepth == 0 && !dispatchScheduled) {
+            dispatchScheduled = true;
+            SwingUtilities.invokeLater(this::dispatch);
+        }
+    }
+
+    /**
+     * Run changes as one batch: budget events are held back until the
+     * outermost batch ends, and then the listeners are notified once, before
+     * this returns or throws. Batches can be nested.
+     * @param changes Changes to make.
+     */
+    public void batch(Runnable changes) {
+        batchDepth++;
+        try {
+            changes.run();
+        } finally {
+            batchDepth--;
+            // Also if the changes failed, so the events made are not held
+            if (batchDepth == 0) {
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners if an event is pending and no batch is running.
+     */
+    private void dispatch() {
+        dispatchScheduled = false;
+        if (pendingEvents.isEmpty() || batchDepth > 0) {
+            return;
+        }
+        List<BudgetEvent> events = Collections.unmodifiableList(
+                pendingEvents);
+        pendingEvents = new ArrayList<>();
+        for (BudgetChangeListener listener : new ArrayList<>(listeners)) {
+            listener.budgetChanged(events);
         }
     }
 
@@ -150,6 +255,33 @@ public class BudgetHandler {
         listeners.add(listener);
     }
 
+    /**
+     * Remove a BudgetEventListener.
+     *
+     * @param listener BudgetEventListener.
+     */
+    public void removeBudgetEventListener(BudgetEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Add a BudgetChangeListener to be told what changed.
+     *
+     * @param listener BudgetChangeListener.
+     */
+    public void addBudgetChangeListener(BudgetChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a BudgetChangeListener.
+     *
+     * @param listener BudgetChangeListener.
+     */
+    public void removeBudgetChangeListener(BudgetChangeListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Add a row to a list.
      *
@@ -160,7 +292,185 @@ public class BudgetHandler {
         lists[which.index].addBudget(row);
         Logger.getAnonymousLogger().log(Level.INFO,
                 String.format("Added row: %s", row.toString()));
-        update();
+    }
+
+    /**
+     * Add rows to a list, firing a single table and budget event.
+     *
+     * @param which BudgetList to add to.
+     * @param rows  Rows to add.
+     */
+    public void addBudgets(Which which, Collection<BudgetRow> rows) {
+        lists[which.index].addBudgets(rows);
+        Logger.getAnonymousLogger().log(Level.INFO,
+                String.format("Added %d rows", rows.size()));
+    }
+
+    /**
+     * Start a bulk load. Rows given to the returned Loader are added in
+     * batches without any events; closing it fires one insert event per
+     * changed list, and a budget event if the budget changed.
+     *
+     * @return A new Loader.
+     */
+    public Loader load() {
+        return new Loader();
+    }
+
+    /**
+     * Bulk-loads rows into the BudgetLists. See <code>load()</code>.
+     * <p>
+     * Besides appending, a Loader can also insert, replace and remove rows
+     * (used to replay a Journal). Lists changed that way get a single data
+     * changed event instead of an insert event.
+     */
+    public class Loader implements AutoCloseable {
+
+        /**
+         * Amount of rows buffered per list before appending them.
+         */
+        private static final int BATCH_SIZE = 4096;
+
+        private final List<List<BudgetRow>> batches =
+                new ArrayList<>(lists.length);
+        private final int[] firstRows = new int[lists.length];
+        private final boolean[] edited = new boolean[lists.length];
+        private final Money oldBudget = budget;
+        private int loaded = 0;
+
+        private Loader() {
+            for (int i = 0; i < lists.length; i++) {
+                batches.add(new ArrayList<>(BATCH_SIZE));
+                firstRows[i] = lists[i].getRowCount();
+            }
+        }
+
+        /**
+         * Add a row.
+         * @param which BudgetList to add to.
+         * @param row   Row information.
+         */
+        public void add(Which which, BudgetRow row) {
+            List<BudgetRow> batch = batches.get(which.index);
+            batch.add(row);
+            if (batch.size() >= BATCH_SIZE) {
+                flush(which.index);
+            }
+        }
+
+        /**
+         * Add rows, in order.
+         * @param which BudgetList to add to.
+         * @param rows  Rows to add.
+         */
+        public void addAll(Which which, Collection<BudgetRow> rows) {
+            flush(which.index);
+            lists[which.index].appendRows(rows);
+            loaded += rows.size();
+        }
+
+        /**
+         * Insert a row.
+         * @param which BudgetList to insert into.
+         * @param index Index to insert the row at.
+         * @param row   Row information.
+         * @throws IndexOutOfBoundsException If index is out of bounds.
+         */
+        public void insert(Which which, int index, BudgetRow row) {
+            flush(which.index);
+            lists[which.index].insertRowQuietly(index, row);
+            edited[which.index] = true;
+        }
+
+        /**
+         * Replace a row.
+         * @param which BudgetList of the row.
+         * @param index Index of the row.
+         * @param row   New row information.
+         * @throws IndexOutOfBoundsException If index is out of bounds.
+         */
+        public void set(Which which, int index, BudgetRow row) {
+            flush(which.index);
+            lists[which.index].setRowQuietly(index, row);
+            edited[which.index] = true;
+        }
+
+        /**
+         * Remove a range of rows.
+         * @param which BudgetList to remove from.
+         * @param first First row to remove.
+         * @param last  Last row to remove, inclusive.
+         * @throws IndexOutOfBoundsException If the range is out of bounds.
+         */
+        public void remove(Which which, int first, int last) {
+            flush(which.index);
+            lists[which.index].removeRowsQuietly(first, last);
+            edited[which.index] = true;
+        }
+
+        /**
+         * Leave the rows of a list in a save file, reading them as they are
+         * needed. See <code>BinarySave.open()</code>.
+         * @param which BudgetList to show the rows in, which must be empty.
+         * @param rows  Rows to show.
+         * @throws IllegalStateException If the BudgetList is not empty.
+         */
+        void page(Which which, PagedRows rows) {
+            flush(which.index);
+            lists[which.index].setPagedRows(rows);
+        }
+
+        /**
+         * Set the budget amount without firing a budget event.
+         * @param amount The budget amount, will use absolute value.
+         */
+        public void setBudget(double amount) {
+            setBudget(Money.valueOf(amount));
+        }
+
+        /**
+         * Set the budget amount without firing a budget event.
+         * @param amount The budget amount, will use absolute value.
+         */
+        public void setBudget(Money amount) {
+            budget = amount.abs();
+        }
+
+        /**
+         * Set the categories available.
+         * @param cats Categories to use.
+         */
+        public void setCategories(String[] cats) {
+            categories.setList(cats);
+        }
+
+        private void flush(int index) {
+            List<BudgetRow> batch = batches.get(index);
+            lists[index].appendRows(batch);
+            loaded += batch.size();
+            batch.clear();
+        }
+
+        /**
+         * Append the remaining rows and fire the events.
+         */
+        @Override
+        public void close() {
+            for (int i = 0; i < lists.length; i++) {
+                flush(i);
+                int last = lists[i].getRowCount() - 1;
+                if (edited[i]) {
+                    lists[i].fireTableDataChanged();
+                } else if (last >= firstRows[i]) {
+                    lists[i].fireTableRowsInserted(firstRows[i], last);
+                }
+            }
+            Logger.getAnonymousLogger().log(Level.INFO,
+                    String.format("Loaded %d rows", loaded));
+            if (!budget.equals(oldBudget)) {
+                fire(BudgetEvent.budgetChanged(oldBudget, budget));
+            }
+        }
     }
 
     /**
@@ -171,17 +481,29 @@ public class BudgetHandler {
      */
     public void removeRow(Which which, int row) {
         lists[which.index].removeBudget(row);
-        update();
     }
 
     /**
      * Set the budget amount.
      *
      * @param budget The budget amount, will use absolute value.
+     * @throws NumberFormatException If budget is not finite.
      */
     public void setBudget(double budget) {
-        this.budget = Math.abs(budget);
-        update();
+        setBudget(Money.valueOf(budget));
+    }
+
+    /**
+     * Set the budget amount.
+     *
+     * @param budget The budget amount, will use absolute value.
+     */
+    public void setBudget(Money budget) {
+        Money old = this.budget;
+        this.budget = budget.abs();
+        if (!this.budget.equals(old)) {
+            fire(BudgetEvent.budgetChanged(old, this.budget));
+        }
     }
 
     /**
@@ -190,6 +512,15 @@ public class BudgetHandler {
      * @return The budget amount.
      */
     public double getBudget() {
+        return budget.toDouble();
+    }
+
+    /**
+     * Get the exact budget amount.
+     *
+     * @return The budget amount.
+     */
+    public Money getBudgetAmount() {
         return budget;
     }
 
@@ -202,13 +533,47 @@ public class BudgetHandler {
      * @return Last available known money spent.
      */
     public double getMoneySpent() {
-        double spent = 0;
+        return getSpentAmount().toDouble();
+    }
+
+    /**
+     * Get the exact total of money spent. The BudgetLists keep running
+     * totals, so this does not depend on the amount of rows.
+     *
+     * @return Last available known money spent.
+     */
+    public Money getSpentAmount() {
+        long spent = 0;
         for (BudgetList list : lists) {
-            for (BudgetRow row : list.getRowsVector()) {
-                spent -= row.getMoneyValue();
-            }
+            spent -= list.getTotal().getCents();
         }
-        return spent;
+        return Money.ofCents(spent);
+    }
+
+    /**
+     * Get the exact total of money spent in one BudgetList.
+     *
+     * @param which Which BudgetList.
+     * @return Money spent.
+     */
+    public Money getSpentAmount(Which which) {
+        return lists[which.index].getTotal().negate();
+    }
+
+    /**
+     * Get the exact total of money spent on one category, in both
+     * BudgetLists.
+     *
+     * @param category Category name.
+     * @return Money spent, 0 if the category is unknown.
+     */
+    public Money getSpentAmount(String category) {
+        int id = categories.findId(category);
+        long spent = 0;
+        for (BudgetList list : lists) {
+            spent -= list.getTotal(id);
+        }
+        return Money.ofCents(spent);
     }
 
     /**
@@ -217,15 +582,38 @@ public class BudgetHandler {
      * @return Remaining budget.
      */
     public double getRemainingBudget() {
-        return getBudget() - getMoneySpent();
+        return getRemainingAmount().toDouble();
+    }
+
+    /**
+     * Get the exact remaining amount of money left in the budget.
+     *
+     * @return Remaining budget.
+     */
+    public Money getRemainingAmount() {
+        return budget.minus(getSpentAmount());
     }
 
     /**
      * Update budget information. Preferably to be called after changes made
      * to any of the budget lists or any other budget-related value changes.
+     * <p>
+     * The listeners are not notified right away: any number of updates
+     * during one event, or during a batch (see <code>batch()</code>), notify
+     * them once.
      */
     public void update() {
-        notifyListeners();
+        fire(BudgetEvent.of(BudgetEvent.Type.CHANGED));
+    }
+
+    /**
+     * Get the version of the budget. The version changes whenever the lists,
+     * categories or budget change, so two equal versions mean nothing
+     * changed in between.
+     * @return The version.
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -236,7 +624,7 @@ public class BudgetHandler {
         for (BudgetList list : lists) {
             list.clear();
         }
-        setBudget(0); // will call update()
+        setBudget(Money.ZERO); // fires a budget event if it changed
     }
 
     /**
@@ -256,14 +644,8 @@ public class BudgetHandler {
      * @return Array of BudgetRows from one category.
      */
     public BudgetRow[] getBudgetRows(String category, Which which) {
-        ArrayList<BudgetRow> list =
-                new ArrayList<>(lists[which.index].getRowCount());
-        for (BudgetRow row : getBudgetRows(which)) {
-            if (row.getCategory() == category) {
-
-            }
-        }
-        return list.toArray(new BudgetRow[list.size()]);
+        int id = categories.findId(category);
+        return (id < 0) ? new BudgetRow[0] : lists[which.index].getRows(id);
     }
 
     /**
@@ -271,11 +653,17 @@ public class BudgetHandler {
      * @return Map of expenses by type.
      */
     public HashMap<String, Double> getExpenseByCategory() {
-        HashMap<String, Double> map = new HashMap<>(getCategories().size());
+        long[] totals = new long[0];
         for (BudgetList list : lists) {
-            map.putAll(list.getExpenseByCategory(getCategories()));
+            long[] listTotals = list.getTotalByCategory();
+            if (listTotals.length > totals.length) {
+                totals = Arrays.copyOf(totals, listTotals.length);
+            }
+            for (int id = 0; id < listTotals.length; id++) {
+                totals[id] += listTotals[id];
+            }
         }
-        return map;
+        return BudgetList.toCategoryMap(totals, categories);
     }
 
     /**
@@ -291,27 +679,89 @@ public class BudgetHandler {
     /**
      * Get the amount of expenses of a type from a BudgetList. Each expense
      * will be paired to its day of the month (Integer value).
+     * @param type Category of the expenses.
      * @param which Which BudgetList.
-     * @return HashMap of expenses of every month day from a given type.
+     * @return HashMap of expenses of every month day from a given type, with
+     * 0 for days without expenses.
      */
     public HashMap<Integer, Double> getDatedExpenses(String type, Which which) {
-        HashMap<Integer, Double> map =
-                new HashMap<>(lists[which.index].getRowCount());
-        boolean[] daysSet = new boolean[FormattedDate.getMaxMonthDays()];
-        for (BudgetRow row : getBudgetRows(which)) {
-            map.put(row.getDay(), map.getOrDefault(row.getDay(), 0d) +
-                row.getMoneyValue());
-            daysSet[row.getDay()] = true;
-        }
-        // Ensure that days without any expenses are set to 0
-        for (int i = 0; i < daysSet.length; i++) {
-            if (!daysSet[i]) {
-                map.put(i, 0d);
-            }
+        int id = categories.findId(type);
+        long[] days = (id < 0) ? new long[BudgetList.DAYS]
+                : getTotalByDay(id, which);
+        int maxDays = Math.min(FormattedDate.getMaxMonthDays(),
+                BudgetList.DAYS - 1);
+        HashMap<Integer, Double> map = new HashMap<>(maxDays * 2);
+        for (int day = 1; day <= maxDays; day++) {
+            map.put(day, days[day] / 100d);
         }
         return map;
     }
 
+    /**
+     * Get the total amount of expenses by day of the month, read from the
+     * totals the BudgetLists keep.
+     * @param categoryId Id of the category, or -1 for every category.
+     * @param which Which BudgetList, or null for both.
+     * @return Totals in cents, indexed by day (<code>BudgetList.DAYS</code>
+     * of them). Day 0 holds the rows without a known date.
+     */
+    public long[] getTotalByDay(int categoryId, Which which) {
+        long[] days = new long[BudgetList.DAYS];
+        for (BudgetList list : lists) {
+            if (which == null || list == lists[which.index]) {
+                list.addTotalByDay(categoryId, days);
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Take a snapshot of the budget, categories and rows. Must be called on
+     * the thread that modifies the BudgetHandler. The rows are not copied,
+     * so this is cheap, and while nothing changes the same snapshot is
+     * returned again.
+     * @return An immutable BudgetSnapshot of the current version.
+     */
+    public BudgetSnapshot snapshot() {
+        if (lastSnapshot != null && lastSnapshot.getVersion() == version) {
+            return lastSnapshot;
+        }
+        RowStore[] rows = new RowStore[lists.length];
+        long[][][] totals = new long[lists.length][][];
+        for (int i = 0; i < lists.length; i++) {
+            rows[i] = lists[i].freezeRows();
+            totals[i] = lists[i].copyTotals();
+        }
+        lastSnapshot = new BudgetSnapshot(version, budget,
+                categories.toArray(), categories.getNames(), rows, totals);
+        return lastSnapshot;
+    }
+
+    /**
+     * Take a snapshot of the budget, categories and totals, without the
+     * rows. Unlike <code>snapshot()</code>, this never reads rows that are
+     * paged from a save, so it stays cheap after a lazy open; use it when
+     * only totals are needed, as for charts. Must be called on the thread
+     * that modifies the BudgetHandler.
+     * @return An immutable BudgetSnapshot of the current version, whose
+     * rows cannot be read.
+     */
+    public BudgetSnapshot snapshotTotals() {
+        if (lastSnapshot != null && lastSnapshot.getVersion() == version) {
+            return lastSnapshot;
+        }
+        if (lastTotals != null && lastTotals.getVersion() == version) {
+            return lastTotals;
+        }
+        long[][][] totals = new long[lists.length][][];
+        for (int i = 0; i < lists.length; i++) {
+            totals[i] = lists[i].copyTotals();
+        }
+        lastTotals = new BudgetSnapshot(version, budget,
+                categories.toArray(), categories.getNames(), null, totals);
+        return lastTotals;
+    }
+
     /**
      * Get a BudgetList.
      * @param which Which BudgetList.
@@ -1,11 +1,40 @@
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+import static java.util.logging.Logger.getAnonymousLogger;
 
 /**
- * The table model for a BudgetTable.
+ * The table model for a BudgetTable. The rows are kept in a RowStore.
+ * <p>
+ * The totals of the list, by category and day of the month, are kept up to
+ * date by every change made through the list, so reading them does not
+ * depend on the amount of rows.
+ * <p>
+ * A list can also keep secondary indexes of its rows by category, day and
+ * name (see <code>setIndexed()</code>), so filtered lookups take time
+ * proportional to the result rather than to the list. They are
+ * updated in the methods that change the rows rather than from the table
+ * events, as an event does not hold the old values of the rows.
+ * <p>
+ * A BudgetList opened from a binary save may leave its rows in the file (see
+ * <code>setPagedRows()</code>). Its values and totals are then read from the
+ * file as needed, and the rows are only read into the RowStore once the list
+ * is changed.
  */
-public class BudgetList extends DefaultTableModel {
+public class BudgetList extends AbstractTableModel {
 
     private static final String[] HEADERS = {
             "Date",
@@ -15,30 +44,433 @@ public class BudgetList extends DefaultTableModel {
             "Remove"
     };
 
+    // Columns
+    static final int DATE = 0;
+    static final int CATEGORY = 1;
+    static final int NAME = 2;
+    static final int MONEY = 3;
+
     public enum SortType {
         ALPHABETICAL, // Sort alphabetically
         BY_DATE, // Sort by date
         BY_MONEY, // Sort by money amount (including if it is negative)
-        BY_MONEY_ABS // Sort by absolute money (ignores if positive or negative)
+        // Sort by absolute money (ignores if positive or negative)
+        BY_MONEY_ABS,
+        BY_CATEGORY // Sort by category name
     }
 
+    private String[] columnNames;
+    private RowStore store = new RowStore(new CategoryList());
 
     /**
      * Create a BudgetList with translations and starting CategoryList.
      * @param translator Translator to use.
      */
     public BudgetList(Translator translator) {
-        setColumnIdentifiers(translator.translate(HEADERS));
+        columnNames = translator.translate(HEADERS);
     }
 
     // No empty constructor
     private BudgetList() { }
 
+    /**
+     * Rows still in a save file, or null if every row is in the RowStore.
+     */
+    private PagedRows pagedRows;
+    /**
+     * Frozen copy of the paged rows, made by the first freezeRows().
+     */
+    private RowStore frozenPages;
+
+    /**
+     * Days in a row of the totals cube. Day 0 holds the rows without a known
+     * date.
+     */
+    public static final int DAYS = 32;
+
+    /**
+     * Sum of every amount, in cents.
+     */
+    private long total = 0;
+    /**
+     * Sums of the amounts by category id, in cents. May be shorter than the
+     * dictionary if the last ids are not used.
+     */
+    private long[] categoryTotals = new long[0];
+    /**
+     * Sums of the amounts by day of the month, in cents.
+     */
+    private long[] dayTotals = new long[DAYS];
+    /**
+     * Sums of the amounts by category id and day of the month, in cents.
+     * Has as many rows as categoryTotals.
+     */
+    private long[][] cube = new long[0][];
+
+    /**
+     * Secondary indexes, or null if the list is not indexed.
+     */
+    private Indexes indexes;
+
     /**
      * Clear the budget list.
      */
     public void clear() {
-        setRowCount(0);
+        int last = getRowCount() - 1;
+        if (pagedRows != null) {
+            // Nothing to keep, so there is no need to read the rows
+            pagedRows.close();
+            pagedRows = null;
+            frozenPages = null;
+        }
+        store.clear();
+        setTotals(new long[0][]);
+        if (indexes != null) {
+            indexes.clear();
+        }
+        if (last >= 0) {
+            fireTableRowsDeleted(0, last);
+        }
+    }
+
+    /**
+     * Leave the rows of an empty list in a save file, reading them only when
+     * they are used. No event is fired.
+     * @param rows Rows to show.
+     * @throws IllegalStateException If the list is not empty.
+     */
+    void setPagedRows(PagedRows rows) {
+        if (getRowCount() > 0) {
+            rows.close();
+            throw new IllegalStateException("BudgetList is not empty.");
+        }
+        pagedRows = rows;
+        frozenPages = null;
+        // Known from the save without reading any row
+        setTotals(rows.getTotals(getCategoryList()));
+        if (indexes != null) {
+            indexes.rebuild();
+        }
+    }
+
+    /**
+     * Check if the rows are still in a save file.
+     * @return True if the rows are paged from a save.
+     */
+    public boolean isPaged() {
+        return pagedRows != null;
+    }
+
+    /**
+     * Open the rows still in a save file again, for another list.
+     * @return PagedRows of their own, or null if the rows are not paged.
+     * @throws IOException If the save file cannot be read.
+     */
+    PagedRows reopenPagedRows() throws IOException {
+        return (pagedRows != null) ? pagedRows.reopen() : null;
+    }
+
+    /**
+     * Read the rows from the save file into the RowStore, if they are paged.
+     * Called before any change to the rows.
+     * @throws UncheckedIOException If the rows cannot be read.
+     */
+    private void materialize() {
+        if (pagedRows == null) {
+            return;
+        }
+        BudgetRow[] rows;
+        try {
+            rows = pagedRows.readAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pagedRows.close();
+        pagedRows = null;
+        frozenPages = null;
+        // The rows add up to the totals from the save again
+        setTotals(new long[0][]);
+        // The rows keep their indexes, so the indexes stay valid
+        Indexes kept = indexes;
+        indexes = null;
+        appendRows(Arrays.asList(rows));
+        indexes = kept;
+    }
+
+    /**
+     * Use the ids of a CategoryList for the categories of the rows. The rows
+     * already in the list are kept.
+     * @param categories CategoryList to take category ids from, normally the
+     *                   one of the BudgetHandler.
+     */
+    public void setCategoryList(CategoryList categories) {
+        if (store.getDictionary() == categories) {
+            return;
+        }
+        RowStore old = store;
+        store = new RowStore(categories);
+        store.ensureCapacity(old.size());
+        for (int r = 0; r < old.size(); r++) {
+            store.add(old.getRow(r));
+        }
+        if (pagedRows != null) {
+            frozenPages = null;
+            setTotals(pagedRows.getTotals(categories));
+        } else {
+            setTotals(new long[0][]);
+            for (int r = 0; r < store.size(); r++) {
+                addToTotals(r, 1);
+            }
+        }
+        if (indexes != null) {
+            indexes.rebuild();
+        }
+    }
+
+    /**
+     * Keep secondary indexes of the rows by category, day and name, or stop
+     * keeping them. The indexes are kept up to date by every change made
+     * through the list; they cost memory and make inserting and removing
+     * rows somewhat slower.
+     * @param indexed True to keep the indexes.
+     */
+    public void setIndexed(boolean indexed) {
+        if (indexed && indexes == null) {
+            indexes = new Indexes();
+            indexes.rebuild();
+        } else if (!indexed) {
+            indexes = null;
+        }
+    }
+
+    /**
+     * Check if the list keeps secondary indexes.
+     * @return True if the list is indexed.
+     */
+    public boolean isIndexed() {
+        return indexes != null;
+    }
+
+    /**
+     * Find the rows of a category.
+     * @param categoryId Id of the category in the CategoryList of the list.
+     * @return Indexes of the rows, in ascending order.
+     */
+    public int[] findRowsByCategory(int categoryId) {
+        if (indexes != null) {
+            return indexes.categories.get(categoryId);
+        }
+        return findRows(row -> row.getCategoryId() == categoryId);
+    }
+
+    /**
+     * Find the rows of a day of the month.
+     * @param day Day of the month, 0 for rows without a known date.
+     * @return Indexes of the rows, in ascending order.
+     */
+    public int[] findRowsByDay(int day) {
+        if (indexes != null) {
+            return indexes.days.get(day);
+        }
+        return findRows(row -> row.getDay() == day);
+    }
+
+    /**
+     * Find the rows with a name.
+     * @param name Name of the rows.
+     * @return Indexes of the rows, in ascending order.
+     */
+    public int[] findRowsByName(String name) {
+        if (indexes != null) {
+            return indexes.names.get(name);
+        }
+        return findRows(row -> row.getName().equals(name));
+    }
+
+    /**
+     * Find the rows with a name that starts with a prefix.
+     * @param prefix Start of the names.
+     * @return Indexes of the rows, ordered by name and then by index.
+     */
+    public int[] findRowsByNamePrefix(String prefix) {
+        if (indexes != null) {
+            return indexes.names.get(prefix, prefix + Character.MAX_VALUE);
+        }
+        ArrayList<Integer> rows = new ArrayList<>();
+        String[] names = new String[getRowCount()];
+        forEachRow(row -> {
+            String name = row.getName();
+            if (name.startsWith(prefix)) {
+                names[row.getIndex()] = name;
+                rows.add(row.getIndex());
+            }
+        });
+        rows.sort(Comparator.comparing(r -> names[r])); // Stable
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Find the rows that match a test by looking at every row.
+     */
+    private int[] findRows(Predicate<RowView> test) {
+        int[] rows = new int[getRowCount()];
+        int[] count = {0};
+        forEachRow(row -> {
+            if (test.test(row)) {
+                rows[count[0]++] = row.getIndex();
+            }
+        });
+        return Arrays.copyOf(rows, count[0]);
+    }
+
+    /**
+     * Get the CategoryList the category ids of the rows come from.
+     * @return The CategoryList.
+     */
+    public CategoryList getCategoryList() {
+        return store.getDictionary();
+    }
+
+    /**
+     * Get the RowStore holding the rows. Paged rows are read into it first.
+     * @return The RowStore.
+     */
+    public RowStore getRowStore() {
+        materialize();
+        return store;
+    }
+
+    @Override
+    public int getRowCount() {
+        return (pagedRows != null) ? pagedRows.getRowCount() : store.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return true;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (pagedRows != null) {
+            return pagedRows.getValueAt(row, column);
+        }
+        switch (column) {
+            case DATE:
+                return store.getDateString(row);
+            case CATEGORY:
+                return store.getCategory(row);
+            case NAME:
+                return store.getName(row);
+            case MONEY:
+                return Money.ofCents(store.getCents(row));
+            default: // Remove
+                return null;
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        if (column > MONEY) {
+            return; // Remove has no value
+        }
+        materialize();
+        Object oldKey = (indexes != null) ? indexes.keyOf(row, column) : null;
+        BudgetRow oldRow = store.getRow(row);
+        addToTotals(row, -1);
+        setValue(value, row, column);
+        addToTotals(row, 1);
+        if (indexes != null) {
+            indexes.change(row, column, oldKey);
+        }
+        fireTableChanged(new RowsEvent(this, row, column,
+                TableModelEvent.UPDATE, Collections.singletonList(oldRow),
+                Collections.singletonList(store.getRow(row))));
+    }
+
+    private void setValue(Object value, int row, int column) {
+        switch (column) {
+            case DATE:
+                store.setDate(row, String.valueOf(value));
+                break;
+            case CATEGORY:
+                store.setCategory(row, String.valueOf(value));
+                break;
+            case NAME:
+                store.setName(row, String.valueOf(value));
+                break;
+            case MONEY:
+                try {
+                    store.setCents(row, (value instanceof Money)
+                            ? ((Money) value).getCents()
+                            : Money.parseCents(String.valueOf(value)));
+                } catch (NumberFormatException e) {
+                    getAnonymousLogger().log(Level.WARNING,
+                            "Ignoring amount that is not a number: " + value);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Add the amount of a row to the totals, or take it off.
+     * @param row Index of the row in the RowStore.
+     * @param sign 1 to add the row, -1 to take it off.
+     */
+    private void addToTotals(int row, int sign) {
+        long cents = sign * store.getCents(row);
+        int id = store.getCategoryId(row);
+        int day = store.getDay(row);
+        if (day >= DAYS) {
+            day = 0;
+        }
+        if (id >= cube.length) {
+            growTotals(getCategoryList().getIdCount());
+        }
+        total += cents;
+        categoryTotals[id] += cents;
+        dayTotals[day] += cents;
+        cube[id][day] += cents;
+    }
+
+    /**
+     * Replace the totals with a cube, adding up the other totals from it.
+     * @param totals Totals by category id and day, kept.
+     */
+    private void setTotals(long[][] totals) {
+        cube = totals;
+        total = 0;
+        categoryTotals = new long[cube.length];
+        dayTotals = new long[DAYS];
+        for (int id = 0; id < cube.length; id++) {
+            for (int day = 0; day < DAYS; day++) {
+                categoryTotals[id] += cube[id][day];
+                dayTotals[day] += cube[id][day];
+            }
+            total += categoryTotals[id];
+        }
+    }
+
+    /**
+     * Make room in the totals for more category ids.
+     */
+    private void growTotals(int categories) {
+        int old = cube.length;
+        cube = Arrays.copyOf(cube, categories);
+        for (int id = old; id < categories; id++) {
+            cube[id] = new long[DAYS];
+        }
+        categoryTotals = Arrays.copyOf(categoryTotals, categories);
     }
 
     /**
@@ -46,7 +478,121 @@ public class BudgetList extends DefaultTableModel {
      * @param b A BudgetRow.
      */
     public void addBudget(BudgetRow b) {
-        addRow(b.getRowData());
+        materialize();
+        store.add(b);
+        addToTotals(store.size() - 1, 1);
+        if (indexes != null) {
+            indexes.add(store.size() - 1);
+        }
+        int row = store.size() - 1;
+        fireTableChanged(new RowsEvent(this, row, TableModelEvent.ALL_COLUMNS,
+                TableModelEvent.INSERT, Collections.emptyList(),
+                Collections.singletonList(store.getRow(row))));
+    }
+
+    /**
+     * Add budget rows, firing a single insert event for all of them.
+     * @param rows BudgetRows to add.
+     */
+    public void addBudgets(Collection<BudgetRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int first = getRowCount();
+        appendRows(rows);
+        fireTableChanged(new RowsEvent(this, first, getRowCount() - 1,
+                TableModelEvent.INSERT, Collections.emptyList(),
+                new ArrayList<>(rows)));
+    }
+
+    /**
+     * Append budget rows without notifying any listeners. The caller is
+     * responsible for firing an insert event for the appended range.
+     * @param rows BudgetRows to append.
+     */
+    void appendRows(Collection<BudgetRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        materialize();
+        store.ensureCapacity(store.size() + rows.size());
+        for (BudgetRow b : rows) {
+            store.add(b);
+            addToTotals(store.size() - 1, 1);
+            if (indexes != null) {
+                indexes.add(store.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Insert a budget row without notifying any listeners.
+     * @param index Index to insert the row at.
+     * @param b A BudgetRow.
+     * @throws IndexOutOfBoundsException If index is out of bounds.
+     */
+    void insertRowQuietly(int index, BudgetRow b) {
+        materialize();
+        store.insert(index, b);
+        addToTotals(index, 1);
+        if (indexes != null) {
+            indexes.insert(index);
+        }
+    }
+
+    /**
+     * Replace a budget row without notifying any listeners.
+     * @param index Index of the row to replace.
+     * @param b The new BudgetRow.
+     * @throws IndexOutOfBoundsException If index is out of bounds.
+     */
+    void setRowQuietly(int index, BudgetRow b) {
+        materialize();
+        Object[] oldKeys = (indexes != null) ? indexes.keysOf(index) : null;
+        addToTotals(index, -1);
+        store.set(index, b);
+        addToTotals(index, 1);
+        if (indexes != null) {
+            for (int column = DATE; column <= NAME; column++) {
+                indexes.change(index, column, oldKeys[column]);
+            }
+        }
+    }
+
+    /**
+     * Remove a range of rows without notifying any listeners.
+     * @param first First row to remove.
+     * @param last Last row to remove, inclusive.
+     * @throws IndexOutOfBoundsException If the range is out of bounds.
+     */
+    void removeRowsQuietly(int first, int last) {
+        materialize();
+        if (first >= 0 && last < store.size()) {
+            for (int r = first; r <= last; r++) {
+                addToTotals(r, -1);
+            }
+        }
+        store.remove(first, last);
+        if (indexes != null) {
+            indexes.remove(first, last);
+        }
+    }
+
+    /**
+     * Move a range of rows, like <code>DefaultTableModel.moveRow()</code>.
+     * @param start First row to move.
+     * @param end Last row to move, inclusive.
+     * @param to New index of the first row.
+     * @throws IndexOutOfBoundsException If a row is out of bounds.
+     */
+    public void moveRow(int start, int end, int to) {
+        materialize();
+        store.move(start, end, to);
+        if (indexes != null) {
+            indexes.rebuild();
+        }
+        fireTableRowsUpdated(Math.min(start, to),
+                Math.max(end, to + end - start));
     }
 
     /**
@@ -54,61 +600,198 @@ public class BudgetList extends DefaultTableModel {
      * @param index Index of the row too remove.
      */
     public void removeBudget(int index) {
-        removeRow(index);
+        materialize();
+        BudgetRow oldRow = store.getRow(index);
+        removeRowsQuietly(index, index);
+        fireTableChanged(new RowsEvent(this, index, TableModelEvent.ALL_COLUMNS,
+                TableModelEvent.DELETE, Collections.singletonList(oldRow),
+                Collections.emptyList()));
     }
 
     /**
-     * Sort the budget list.
+     * Sort the budget list, changing the order of the rows. To show the rows
+     * in another order without changing the list, use a BudgetRowSorter.
      * @param type Method to sort.
      */
     public void sort(SortType type) {
-        getRowsVector().sort((BudgetRow o1, BudgetRow o2) -> {
-            // 1 = >, -1 = <, 0 = EQUAL
-            if (type == SortType.BY_DATE) {
-                // Get 'values' of dates (concatenated month and day)
-                if (o1.getDay() != o2.getDay()) {
-                    return (o1.getDay() >
-                            o2.getDay()) ? 1 : -1;
-                } // else its equal
-            } else if (type == SortType.ALPHABETICAL){
-                return o1.getName().compareTo(o2.getName());
-            } else if (type == SortType.BY_MONEY ||
-                    type == SortType.BY_MONEY_ABS) {
-                // Get desired values, BY_MONEY_ABS = Absolute value of money
-                double o1money = (type == SortType.BY_MONEY) ?
-                        o1.getMoneyValue(): Math.abs(o1.getMoneyValue());
-                double o2money = (type == SortType.BY_MONEY) ?
-                        o2.getMoneyValue() : Math.abs(o2.getMoneyValue());
-                if (o1money != o2money) {
-                    return (o1money > o2money) ? 1 : -1;
-                } // else its equal
-            }
-            return 0;
-        });
+        materialize();
+        int n = store.size();
+        store.permute(new SortedOrder(this, type).toArray());
+        if (indexes != null) {
+            indexes.rebuild();
+        }
+        if (n > 0) {
+            fireTableRowsUpdated(0, n - 1);
+        }
+    }
+
+    /**
+     * Get the SortType of a column.
+     * @param column Column index.
+     * @return SortType that orders the rows by the column, or null if the
+     * column cannot be sorted.
+     */
+    public static SortType getSortType(int column) {
+        switch (column) {
+            case DATE:
+                return SortType.BY_DATE;
+            case CATEGORY:
+                return SortType.BY_CATEGORY;
+            case NAME:
+                return SortType.ALPHABETICAL;
+            case MONEY:
+                return SortType.BY_MONEY;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the column a SortType orders by.
+     * @param type Method to sort.
+     * @return Column index.
+     */
+    public static int getColumn(SortType type) {
+        switch (type) {
+            case BY_DATE:
+                return DATE;
+            case BY_CATEGORY:
+                return CATEGORY;
+            case ALPHABETICAL:
+                return NAME;
+            default:
+                return MONEY;
+        }
+    }
+
+    /**
+     * Visit every row in order through a single read-only RowView, without
+     * creating a BudgetRow for every row. Paged rows are read from the save
+     * file, but not kept.
+     * @param action Action to run for every row. The view must not be kept,
+     *               and the list must not be changed by it.
+     * @throws UncheckedIOException If paged rows cannot be read.
+     */
+    public void forEachRow(Consumer<? super RowView> action) {
+        forEachRow(0, getRowCount(), action);
+    }
+
+    /**
+     * Visit a range of rows in order through a single read-only RowView.
+     * @param from First row to visit.
+     * @param to Row after the last row to visit.
+     * @param action Action to run for every row. The view must not be kept,
+     *               and the list must not be changed by it.
+     * @throws IndexOutOfBoundsException If the range is out of bounds.
+     * @throws UncheckedIOException If paged rows cannot be read.
+     */
+    public void forEachRow(int from, int to,
+                           Consumer<? super RowView> action) {
+        if (pagedRows != null) {
+            try {
+                pagedRows.forEach(getCategoryList(), from, to, action);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            store.forEach(from, to, action);
+        }
     }
 
     /**
      * Get the BudgetRows in the list in the form of a Vector object.
+     * @deprecated Copies every row; use <code>forEachRow()</code> to read
+     * the rows, or <code>getRows()</code> for copies.
      * @return Vector of BudgetRows.
      */
+    @Deprecated
     public Vector<BudgetRow> getRowsVector() {
-        Vector<BudgetRow> vec = new Vector<>(getRowCount());
-        for (int r = 0; r < getRowCount(); r++) {
-            BudgetRow budgetRow = new BudgetRow();
-            for (int col = 0; col < getColumnCount(); col++) {
-                budgetRow.setProperField(col, getValueAt(r, col));
-            }
-            vec.add(budgetRow);
-        }
-        return vec;
+        return new Vector<>(Arrays.asList(getRows()));
     }
 
     /**
-     * Get the BudgetRows in the list.
+     * Get copies of the BudgetRows in the list.
      * @return Array of BudgetRows.
      */
     public BudgetRow[] getRows() {
-        return getRowsVector().toArray(new BudgetRow[getRowCount()]);
+        BudgetRow[] rows = new BudgetRow[getRowCount()];
+        forEachRow(row -> rows[row.getIndex()] = row.toBudgetRow());
+        return rows;
+    }
+
+    /**
+     * Get a read-only copy of the rows as they are now, which shares its
+     * memory with the list; see <code>RowStore.freeze()</code>.
+     * @return A frozen RowStore.
+     * @throws UncheckedIOException If paged rows cannot be read.
+     */
+    RowStore freezeRows() {
+        if (pagedRows == null) {
+            return store.freeze();
+        }
+        // Paged rows do not change, so they are copied only once
+        if (frozenPages == null) {
+            RowStore rows = new RowStore(getCategoryList());
+            rows.ensureCapacity(getRowCount());
+            forEachRow(row -> rows.add(row.toBudgetRow()));
+            frozenPages = rows.freeze();
+        }
+        return frozenPages;
+    }
+
+    /**
+     * Copy the totals of every category by day of the month.
+     * @return New array of totals in cents, indexed by category id and then
+     * by day.
+     */
+    long[][] copyTotals() {
+        long[][] totals = new long[cube.length][];
+        for (int id = 0; id < cube.length; id++) {
+            totals[id] = cube[id].clone();
+        }
+        return totals;
+    }
+
+    /**
+     * Get the BudgetRows of one category.
+     * @param categoryId Id of the category in the CategoryList of the list.
+     * @return Array of BudgetRows, in order.
+     */
+    public BudgetRow[] getRows(int categoryId) {
+        if (indexes != null && pagedRows == null) {
+            int[] found = indexes.categories.get(categoryId);
+            BudgetRow[] rows = new BudgetRow[found.length];
+            for (int i = 0; i < found.length; i++) {
+                rows[i] = store.getRow(found[i]);
+            }
+            return rows;
+        }
+        ArrayList<BudgetRow> rows = new ArrayList<>();
+        forEachRow(row -> {
+            if (row.getCategoryId() == categoryId) {
+                rows.add(row.toBudgetRow());
+            }
+        });
+        return rows.toArray(new BudgetRow[rows.size()]);
+    }
+
+    /**
+     * Get the total amount of expenses by category id.
+     * @return Totals in cents, indexed by the ids of the CategoryList of the
+     * list.
+     */
+    public long[] getTotalByCategory() {
+        return Arrays.copyOf(categoryTotals, getCategoryList().getIdCount());
+    }
+
+    /**
+     * Get the total amount of expenses of one category.
+     * @param categoryId Id of the category in the CategoryList of the list.
+     * @return Total in cents.
+     */
+    public long getTotal(int categoryId) {
+        return (categoryId >= 0 && categoryId < categoryTotals.length)
+                ? categoryTotals[categoryId] : 0;
     }
 
     /**
@@ -119,14 +802,231 @@ public class BudgetList extends DefaultTableModel {
      * @return HashMap of expenses by type.
      */
     public HashMap<String, Double> getExpenseByCategory(CategoryList c) {
-        HashMap<String, Double> map = new HashMap<>(c.size());
-        for (BudgetRow row : getRowsVector()) {
-            map.put(row.getCategory(), map.getOrDefault(row.getCategory(), 0d) +
-                    row.getMoneyValue());
+        return toCategoryMap(getTotalByCategory(), getCategoryList());
+    }
+
+    /**
+     * Turn totals by category id into a map of category names.
+     * @param totals Totals in cents, indexed by id.
+     * @param categories CategoryList the ids are from.
+     * @return HashMap of expenses by type, without categories with a total
+     * of 0.
+     */
+    static HashMap<String, Double> toCategoryMap(long[] totals,
+                                                 CategoryList categories) {
+        HashMap<String, Double> map = new HashMap<>(totals.length * 2);
+        for (int id = 0; id < totals.length; id++) {
+            if (totals[id] != 0) {
+                map.put(categories.getName(id), totals[id] / 100d);
+            }
         }
         return map;
     }
 
+    /**
+     * Get the total amount of expenses. If negative, money has been spent.
+     * @return Sum of all expenses.
+     */
+    public Money getTotal() {
+        return Money.ofCents(total);
+    }
+
+    /**
+     * Get the total amount of expenses by day of the month.
+     * @return HashMap of expenses by day, only holding days with expenses.
+     */
+    public HashMap<Integer, Double> getExpenseByDay() {
+        HashMap<Integer, Double> map = new HashMap<>();
+        for (int d = 1; d < DAYS; d++) { // Day 0 is unknown
+            if (dayTotals[d] != 0) {
+                map.put(d, dayTotals[d] / 100d);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Get the total amount of expenses by day of the month.
+     * @return Totals in cents, indexed by day (<code>DAYS</code> of them).
+     * Day 0 holds the rows without a known date.
+     */
+    public long[] getTotalByDay() {
+        return dayTotals.clone();
+    }
+
+    /**
+     * Get the total amount of expenses of one category by day of the month.
+     * @param categoryId Id of the category in the CategoryList of the list.
+     * @return Totals in cents, indexed by day (<code>DAYS</code> of them).
+     * Day 0 holds the rows without a known date.
+     */
+    public long[] getTotalByDay(int categoryId) {
+        return (categoryId >= 0 && categoryId < cube.length)
+                ? cube[categoryId].clone() : new long[DAYS];
+    }
+
+    /**
+     * Add the totals by day of one category, or of every category, to an
+     * array without copying anything.
+     * @param categoryId Id of the category, or -1 for every category.
+     * @param days Array of at least <code>DAYS</code> totals to add to.
+     */
+    public void addTotalByDay(int categoryId, long[] days) {
+        long[] from = (categoryId < 0) ? dayTotals
+                : (categoryId < cube.length) ? cube[categoryId] : null;
+        if (from != null) {
+            for (int d = 0; d < DAYS; d++) {
+                days[d] += from[d];
+            }
+        }
+    }
+
+    /**
+     * A TableModelEvent that also holds the rows as they were before and
+     * after the change, so listeners need not read the list again. See
+     * <code>BudgetEvent</code>.
+     */
+    public static final class RowsEvent extends TableModelEvent {
+
+        private final List<BudgetRow> oldRows;
+        private final List<BudgetRow> newRows;
+
+        /**
+         * Create an event for one row.
+         */
+        RowsEvent(BudgetList source, int row, int column, int type,
+                  List<BudgetRow> oldRows, List<BudgetRow> newRows) {
+            this(source, row, row, column, type, oldRows, newRows);
+        }
+
+        /**
+         * Create an event for a range of rows, inclusive.
+         */
+        RowsEvent(BudgetList source, int firstRow, int lastRow, int column,
+                  int type, List<BudgetRow> oldRows, List<BudgetRow> newRows) {
+            super(source, firstRow, lastRow, column, type);
+            this.oldRows = Collections.unmodifiableList(oldRows);
+            this.newRows = Collections.unmodifiableList(newRows);
+        }
+
+        /**
+         * Get the rows before the change.
+         * @return Unmodifiable list of the removed or updated rows, empty for
+         * an insert.
+         */
+        public List<BudgetRow> getOldRows() {
+            return oldRows;
+        }
+
+        /**
+         * Get the rows after the change.
+         * @return Unmodifiable list of the inserted or updated rows, empty
+         * for a delete.
+         */
+        public List<BudgetRow> getNewRows() {
+            return newRows;
+        }
+    }
+
+    /**
+     * The secondary indexes of the list.
+     */
+    private final class Indexes {
+
+        private final RowIndex<Integer> categories = RowIndex.hashed();
+        private final RowIndex<Integer> days = RowIndex.hashed();
+        private final RowIndex<String> names = RowIndex.sorted();
+
+        /**
+         * Index every row again.
+         */
+        void rebuild() {
+            clear();
+            forEachRow(row -> {
+                categories.add(row.getIndex(), row.getCategoryId());
+                days.add(row.getIndex(), row.getDay());
+                names.add(row.getIndex(), row.getName());
+            });
+        }
+
+        void clear() {
+            categories.clear();
+            days.clear();
+            names.clear();
+        }
+
+        /**
+         * Index a row added after every other row.
+         */
+        void add(int row) {
+            categories.add(row, store.getCategoryId(row));
+            days.add(row, store.getDay(row));
+            names.add(row, store.getName(row));
+        }
+
+        /**
+         * Index an inserted row.
+         */
+        void insert(int row) {
+            categories.insert(row, store.getCategoryId(row));
+            days.insert(row, store.getDay(row));
+            names.insert(row, store.getName(row));
+        }
+
+        void remove(int first, int last) {
+            categories.remove(first, last);
+            days.remove(first, last);
+            names.remove(first, last);
+        }
+
+        /**
+         * Get the key of a row in the index of a column.
+         * @return The key, or null if the column is not indexed.
+         */
+        Object keyOf(int row, int column) {
+            switch (column) {
+                case DATE:
+                    return store.getDay(row);
+                case CATEGORY:
+                    return store.getCategoryId(row);
+                case NAME:
+                    return store.getName(row);
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Get the keys of a row, indexed by column.
+         */
+        Object[] keysOf(int row) {
+            Object[] keys = new Object[NAME + 1];
+            for (int column = DATE; column <= NAME; column++) {
+                keys[column] = keyOf(row, column);
+            }
+            return keys;
+        }
+
+        /**
+         * Update the index of a column after a value of a row changed.
+         * @param oldKey Key of the row before the change.
+         */
+        void change(int row, int column, Object oldKey) {
+            switch (column) {
+                case DATE:
+                    days.change(row, (Integer) oldKey, store.getDay(row));
+                    break;
+                case CATEGORY:
+                    categories.change(row, (Integer) oldKey,
+                            store.getCategoryId(row));
+                    break;
+                case NAME:
+                    names.change(row, (String) oldKey, store.getName(row));
+                    break;
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return getRows().toString();
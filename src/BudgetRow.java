@@ -1,17 +1,16 @@
 import com.sun.istack.internal.NotNull;
 
-import java.text.MessageFormat;
-
 /**
  * A single row in a budget list.
- * NOTE: Every object in the row is a String!
+ * NOTE: Every object in the row is a String, except the amount which is kept
+ * in cents (see Money).
  */
 public class BudgetRow {
 
     private String date;
     private String category;
     private String name;
-    private String money;
+    private long cents;
 
 
     /**
@@ -30,13 +29,28 @@ public class BudgetRow {
      * @param date Date in 'Month-Day' format.
      * @param category BudgetRow category.
      * @param name Given name.
-     * @param money Money added/subtracted from available.
+     * @param money Money added/subtracted from available. Amounts that are
+     *              not numbers are stored as 0, as in a binary save.
      */
     public BudgetRow(String date, String category, String name, String money) {
         this.date = date;
         this.category = category;
         this.name = name;
-        this.money = String.valueOf(money);
+        this.cents = parseCents(money);
+    }
+
+    /**
+     * Create a new budget row.
+     * @param date Date in 'Month-Day' format.
+     * @param category BudgetRow category.
+     * @param name Given name.
+     * @param cents Money added/subtracted from available, in cents.
+     */
+    public BudgetRow(String date, String category, String name, long cents) {
+        this.date = date;
+        this.category = category;
+        this.name = name;
+        this.cents = cents;
     }
 
     /**
@@ -45,7 +59,7 @@ public class BudgetRow {
     public BudgetRow() {
         date = FormattedDate.getFormattedToday();
         name = "New";
-        money = "0";
+        cents = 0;
     }
 
     /**
@@ -63,16 +77,14 @@ public class BudgetRow {
      * @return Row Objects, every object is a String.
      */
     public Object[] getRowData() {
-        return new Object[]{ date, category, name, money };
+        return new Object[]{ date, category, name, getMoney() };
     }
 
     @Override
     public String toString() {
-        // Create a formatted string that has all objects separated by delimiter
-        return new MessageFormat(
-                "{1}{0}{2}{0}{3}{0}{4}").format(
-                        new Object[]{ DELIMITER, date, category, name, money}
-                        );
+        // Create a string that has all objects separated by delimiter
+        return date + DELIMITER + category + DELIMITER + name + DELIMITER +
+                getMoney();
     }
 
     /**
@@ -92,8 +104,9 @@ public class BudgetRow {
             case 2: // String name
                 name = String.valueOf(val);
                 break;
-            case 3: // double money
-                money = String.valueOf(val);
+            case 3: // Money, or a money String
+                cents = (val instanceof Money) ? ((Money) val).getCents()
+                        : parseCents(String.valueOf(val));
                 break;
         }
     }
@@ -115,12 +128,39 @@ public class BudgetRow {
         return category;
     }
 
+    /**
+     * Get the amount formatted with two decimal places.
+     * @return Money String, such as "-12.50".
+     */
     public String getMoney() {
-        return money;
+        return Money.format(cents);
+    }
+
+    /**
+     * Get the amount.
+     * @return The amount as Money.
+     */
+    public Money getAmount() {
+        return Money.ofCents(cents);
     }
 
-    public double getMoneyValue() throws NumberFormatException {
-        return Double.valueOf(money);
+    /**
+     * Get the amount in cents, without creating any object.
+     * @return Amount in cents.
+     */
+    public long getCents() {
+        return cents;
+    }
+
+    /**
+     * Get the amount as a double.
+     * @deprecated Amounts are kept in cents, use <code>getCents()</code> or
+     * <code>getAmount()</code> for exact values.
+     * @return Amount, such as -12.5.
+     */
+    @Deprecated
+    public double getMoneyValue() {
+        return cents / 100d;
     }
 
     /**
@@ -143,6 +183,17 @@ public class BudgetRow {
         return new BudgetRow(split);
     }
 
+    /**
+     * Parse an amount, storing amounts that are not numbers as 0.
+     */
+    private static long parseCents(String money) {
+        try {
+            return Money.parseCents(money);
+        } catch (NumberFormatException | NullPointerException e) {
+            return 0;
+        }
+    }
+
     /**
      * Get the day of the formatted date string.
      * @deprecated Use <code>getDay()</code> from a BudgetRow object.
@@ -0,0 +1,216 @@
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A RowSorter that shows the rows of a BudgetList sorted by one column,
+ * without changing the list.
+ * <p>
+ * The order of every column that has been sorted by is kept, and changes to
+ * the list are applied to all of them as they happen, so switching back to
+ * an earlier column does not sort again. A descending order is the
+ * ascending one read backwards.
+ */
+public class BudgetRowSorter extends RowSorter<BudgetList> {
+
+    private final BudgetList list;
+    private final Map<BudgetList.SortType, SortedOrder> orders =
+            new EnumMap<>(BudgetList.SortType.class);
+
+    /**
+     * The order shown, or null if the rows are shown in list order.
+     */
+    private SortedOrder order;
+    private boolean descending;
+
+    /**
+     * Create a sorter that shows the rows in list order until a column is
+     * sorted.
+     * @param list BudgetList to sort.
+     */
+    public BudgetRowSorter(BudgetList list) {
+        this.list = list;
+    }
+
+    @Override
+    public BudgetList getModel() {
+        return list;
+    }
+
+    /**
+     * Sort by a column, or reverse the order if it is already sorted by.
+     * @param column Column index.
+     */
+    @Override
+    public void toggleSortOrder(int column) {
+        if (BudgetList.getSortType(column) == null) {
+            return;
+        }
+        SortOrder sortOrder = SortOrder.ASCENDING;
+        if (order != null && BudgetList.getColumn(order.getType()) == column &&
+                !descending) {
+            sortOrder = SortOrder.DESCENDING;
+        }
+        setSortKeys(Collections.singletonList(new SortKey(column, sortOrder)));
+    }
+
+    /**
+     * Sort by the first key; any other keys are ignored.
+     * @param keys Sort keys, or null to show the rows in list order.
+     * @throws IllegalArgumentException If the column cannot be sorted.
+     */
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        SortKey key = (keys == null || keys.isEmpty()) ? null : keys.get(0);
+        if (key != null && key.getSortOrder() == SortOrder.UNSORTED) {
+            key = null;
+        }
+        SortedOrder newOrder = null;
+        if (key != null) {
+            BudgetList.SortType type = BudgetList.getSortType(key.getColumn());
+            if (type == null) {
+                throw new IllegalArgumentException("Column " +
+                        key.getColumn() + " cannot be sorted.");
+            }
+            newOrder = orders.computeIfAbsent(type,
+                    t -> new SortedOrder(list, t));
+        }
+        boolean newDescending = key != null &&
+                key.getSortOrder() == SortOrder.DESCENDING;
+        if (newOrder == order && newDescending == descending) {
+            return;
+        }
+        int[] lastRows = getViewToModel();
+        order = newOrder;
+        descending = newDescending;
+        fireSortOrderChanged();
+        fireRowSorterChanged(lastRows);
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        if (order == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new SortKey(
+                BudgetList.getColumn(order.getType()),
+                descending ? SortOrder.DESCENDING : SortOrder.ASCENDING));
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (order == null) {
+            return index;
+        }
+        if (index < 0 || index >= order.size()) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        return order.getRow(descending ? order.size() - 1 - index : index);
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (order == null) {
+            return index;
+        }
+        if (index < 0 || index >= order.size()) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        int position = order.getPosition(index);
+        return descending ? order.size() - 1 - position : position;
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return list.getRowCount();
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return list.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        allRowsChanged();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        // Orders not shown are sorted again only when they are shown
+        orders.clear();
+        if (order != null) {
+            int[] lastRows = getViewToModel();
+            order.rebuild();
+            orders.put(order.getType(), order);
+            fireRowSorterChanged(lastRows);
+        }
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        int[] lastRows = getViewToModel();
+        for (SortedOrder o : orders.values()) {
+            o.rowsInserted(firstRow, endRow);
+        }
+        fireChanged(lastRows);
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        int[] lastRows = getViewToModel();
+        for (SortedOrder o : orders.values()) {
+            o.rowsDeleted(firstRow, endRow);
+        }
+        fireChanged(lastRows);
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        rowsUpdated(firstRow, endRow, -1);
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        if (order == null || !order.isSortedBy(column)) {
+            // The rows shown do not move
+            for (SortedOrder o : orders.values()) {
+                o.rowsUpdated(firstRow, endRow, column);
+            }
+            return;
+        }
+        int[] lastRows = getViewToModel();
+        for (SortedOrder o : orders.values()) {
+            o.rowsUpdated(firstRow, endRow, column);
+        }
+        fireChanged(lastRows);
+    }
+
+    /**
+     * Tell the table the rows moved, if they are sorted.
+     */
+    private void fireChanged(int[] lastRows) {
+        if (order != null) {
+            fireRowSorterChanged(lastRows);
+        }
+    }
+
+    /**
+     * Get the model index of every view row, or null if the rows are shown
+     * in list order.
+     */
+    private int[] getViewToModel() {
+        if (order == null) {
+            return null;
+        }
+        int[] rows = new int[order.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = convertRowIndexToModel(i);
+        }
+        return rows;
+    }
+
+}
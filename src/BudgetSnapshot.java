@@ -0,0 +1,241 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A copy of the state of a BudgetHandler at one point in time. Snapshots are
+ * taken on the event thread and can then be read from any thread, for
+ * example to write a save or draw a chart in the background.
+ * <p>
+ * Taking a snapshot does not copy the rows: they are frozen RowStores that
+ * share their memory with the lists (see <code>RowStore.freeze()</code>).
+ * Every change to the BudgetHandler gives it a new version, and a snapshot
+ * of an unchanged BudgetHandler is the same snapshot.
+ * <p>
+ * A snapshot taken by <code>BudgetHandler.snapshotTotals()</code> has no
+ * rows, only the budget, categories and totals.
+ */
+public final class BudgetSnapshot {
+
+    private final long version;
+    private final Money budget;
+    private final List<String> categories;
+    private final String[] categoryNames;
+    private final RowStore[] rows;
+    private final long[][][] totals;
+
+    /**
+     * Create a snapshot. The arrays are kept, not copied.
+     * @param version Version of the BudgetHandler.
+     * @param budget Budget amount.
+     * @param categories Categories available.
+     * @param categoryNames Category names by id.
+     * @param rows Frozen rows of every BudgetList, indexed by Which, or null
+     *             for a snapshot of the totals only.
+     * @param totals Totals of every BudgetList by category id and day,
+     *               indexed by Which.
+     */
+    BudgetSnapshot(long version, Money budget, String[] categories,
+                   String[] categoryNames, RowStore[] rows,
+                   long[][][] totals) {
+        this.version = version;
+        this.budget = budget;
+        this.categories = Collections.unmodifiableList(
+                Arrays.asList(categories));
+        this.categoryNames = categoryNames;
+        this.rows = rows;
+        this.totals = totals;
+    }
+
+    /**
+     * Get the version of the BudgetHandler the snapshot was taken of.
+     * @return Version, see <code>BudgetHandler.getVersion()</code>.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the budget amount.
+     * @return The budget amount.
+     */
+    public double getBudget() {
+        return budget.toDouble();
+    }
+
+    /**
+     * Get the exact budget amount.
+     * @return The budget amount.
+     */
+    public Money getBudgetAmount() {
+        return budget;
+    }
+
+    /**
+     * Get the exact amount of money left in the budget.
+     * @return Budget amount plus the total of both BudgetLists.
+     */
+    public Money getRemainingAmount() {
+        return budget.plus(getTotal(null));
+    }
+
+    /**
+     * Get the categories available.
+     * @return Unmodifiable list of categories.
+     */
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Find the id of a category.
+     * @param category Category name.
+     * @return Id of the category, or -1 if it has none.
+     */
+    public int findCategoryId(String category) {
+        return Arrays.asList(categoryNames).indexOf(category);
+    }
+
+    /**
+     * Get the amount of rows of a BudgetList.
+     * @param which Which BudgetList.
+     * @return Row count.
+     * @throws IllegalStateException If the snapshot has no rows.
+     */
+    public int getRowCount(BudgetHandler.Which which) {
+        return getRows(which).size();
+    }
+
+    /**
+     * Get a row of a BudgetList.
+     * @param which Which BudgetList.
+     * @param row Index of the row.
+     * @return A new BudgetRow.
+     * @throws IndexOutOfBoundsException If row is out of bounds.
+     * @throws IllegalStateException If the snapshot has no rows.
+     */
+    public BudgetRow getRow(BudgetHandler.Which which, int row) {
+        return getRows(which).getRow(row);
+    }
+
+    /**
+     * Visit every row of a BudgetList in order through a single RowView.
+     * @param which Which BudgetList.
+     * @param action Action to run for every row. The view must not be kept.
+     * @throws IllegalStateException If the snapshot has no rows.
+     */
+    public void forEachRow(BudgetHandler.Which which,
+                           Consumer<? super RowView> action) {
+        getRows(which).forEach(action);
+    }
+
+    /**
+     * Visit a range of rows of a BudgetList in order through a single
+     * RowView.
+     * @param which Which BudgetList.
+     * @param from First row to visit.
+     * @param to Row after the last row to visit.
+     * @param action Action to run for every row. The view must not be kept.
+     * @throws IndexOutOfBoundsException If the range is out of bounds.
+     * @throws IllegalStateException If the snapshot has no rows.
+     */
+    public void forEachRow(BudgetHandler.Which which, int from, int to,
+                           Consumer<? super RowView> action) {
+        getRows(which).forEach(from, to, action);
+    }
+
+    /**
+     * Check if the snapshot has rows.
+     * @return False if the snapshot holds the totals only.
+     */
+    public boolean hasRows() {
+        return rows != null;
+    }
+
+    private RowStore getRows(BudgetHandler.Which which) {
+        if (rows == null) {
+            throw new IllegalStateException("Snapshot has no rows.");
+        }
+        return rows[which.getIndex()];
+    }
+
+    /**
+     * Get the total amount of expenses of one or both BudgetLists.
+     * @param which Which BudgetList, or null for both.
+     * @return Sum of the expenses.
+     */
+    public Money getTotal(BudgetHandler.Which which) {
+        long total = 0;
+        for (long day : getTotalByDay(-1, which)) {
+            total += day;
+        }
+        return Money.ofCents(total);
+    }
+
+    /**
+     * Get the total amount of expenses by category id.
+     * @param which Which BudgetList, or null for both.
+     * @return Totals in cents, indexed by category id.
+     */
+    public long[] getTotalByCategory(BudgetHandler.Which which) {
+        long[] result = new long[categoryNames.length];
+        for (int i = 0; i < totals.length; i++) {
+            if (which != null && which.getIndex() != i) {
+                continue;
+            }
+            for (int id = 0; id < totals[i].length; id++) {
+                for (long day : totals[i][id]) {
+                    result[id] += day;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the amount of expenses by category name, like
+     * <code>BudgetHandler.getExpenseByCategory()</code>.
+     * @param which Which BudgetList, or null for both.
+     * @return HashMap of expenses by category, without categories with a
+     * total of 0.
+     */
+    public HashMap<String, Double> getExpenseByCategory(
+            BudgetHandler.Which which) {
+        long[] byId = getTotalByCategory(which);
+        HashMap<String, Double> map = new HashMap<>(byId.length * 2);
+        for (int id = 0; id < byId.length; id++) {
+            if (byId[id] != 0) {
+                map.put(categoryNames[id], byId[id] / 100d);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Get the total amount of expenses by day of the month.
+     * @param categoryId Id of the category, or -1 for every category.
+     * @param which Which BudgetList, or null for both.
+     * @return Totals in cents, indexed by day (<code>BudgetList.DAYS</code>
+     * of them). Day 0 holds the rows without a known date.
+     */
+    public long[] getTotalByDay(int categoryId, BudgetHandler.Which which) {
+        long[] days = new long[BudgetList.DAYS];
+        for (int i = 0; i < totals.length; i++) {
+            if (which != null && which.getIndex() != i) {
+                continue;
+            }
+            for (int id = 0; id < totals[i].length; id++) {
+                if (categoryId >= 0 && id != categoryId) {
+                    continue;
+                }
+                for (int d = 0; d < days.length; d++) {
+                    days[d] += totals[i][id][d];
+                }
+            }
+        }
+        return days;
+    }
+
+}
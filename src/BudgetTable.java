@@ -28,9 +28,14 @@ public class BudgetTable extends JTable {
                 FormattedDate.getDaysOfMonth());
         JComboBox<String> typeCombo = new JComboBox<>(cats.toArray());
         JCheckBox deleteButton = new JCheckBox("X");
-        deleteButton.addActionListener(e ->
-                budgetList.removeBudget(getSelectedRow())
-        );
+        deleteButton.addActionListener(e -> {
+            // The selected row is a view index, which differs from the
+            // model index once the rows are sorted
+            int row = getSelectedRow();
+            if (row >= 0) {
+                budgetList.removeBudget(convertRowIndexToModel(row));
+            }
+        });
         dateColumn.setCellEditor(new DefaultCellEditor(dateCombo));
         typeColumn.setCellEditor(new DefaultCellEditor(typeCombo));
         moneyColumn.setCellEditor(new DefaultCellEditor(deleteButton));
@@ -44,12 +49,14 @@ public class BudgetTable extends JTable {
     }
 
     /**
-     * Set the BudgetList model of the table.
+     * Set the BudgetList model of the table. Clicking a column header sorts
+     * the rows shown by that column, see BudgetRowSorter.
      * @param model
      */
     public void setModel(BudgetList model) {
         super.setModel((TableModel) model);
         budgetList = model;
+        setRowSorter(new BudgetRowSorter(model));
     }
 
 }
@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -7,12 +8,23 @@ import java.util.logging.Logger;
 /**
  * A CategoryList holds a list of available "types," which are used to
  * categorize expenses.
+ * <p>
+ * Every category name also gets an integer id from a dictionary that is kept
+ * apart from the list. Ids are stable: a name keeps its id when it is removed
+ * from the list or the list is replaced, so rows (see RowStore) can store the
+ * id instead of the name, and totals can be indexed by id.
  */
 public class CategoryList {
 
     private List<String> list;
     private List<CategoriesChangeListener> listeners = new ArrayList<>();
 
+    /**
+     * Names by id. Only grows.
+     */
+    private final List<String> names = new ArrayList<>();
+    private final HashMap<String, Integer> ids = new HashMap<>();
+
     /**
      * Create a new instance of CategoryList with an initial list.
      * @param i Initial list of types.
@@ -42,6 +54,7 @@ public class CategoryList {
      */
     public void setList(List<String> o) {
         list = o;
+        list.forEach(this::getId);
         fireTypesChanged();
     }
 
@@ -53,11 +66,8 @@ public class CategoryList {
     public void setList(String[] sl) {
         list = new ArrayList<>(Arrays.asList(sl));
         // Remove any empty strings in the list
-        for (String t : list) {
-            if (t.isEmpty()) {
-                list.remove(t);
-            }
-        }
+        list.removeIf(String::isEmpty);
+        list.forEach(this::getId);
         fireTypesChanged();
     }
 
@@ -67,6 +77,7 @@ public class CategoryList {
      */
     public void add(String t) {
         list.add(t);
+        getId(t);
         fireTypesChanged();
     }
 
@@ -99,7 +110,62 @@ public class CategoryList {
     }
 
     /**
-     * Remove all types from the list. Notifies change listeners.
+     * Get the id of a category, adding the name to the dictionary (but not to
+     * the list) if needed.
+     * @param category Category name, null is stored as "null".
+     * @return Id of the category.
+     */
+    public int getId(String category) {
+        String name = String.valueOf(category);
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Find the id of a category without adding it to the dictionary.
+     * @param category Category name.
+     * @return Id of the category, or -1 if it has none.
+     */
+    public int findId(String category) {
+        Integer id = ids.get(String.valueOf(category));
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * Get the name of a category id.
+     * @param id Id of the category.
+     * @return Category name.
+     * @throws IndexOutOfBoundsException If the id is unknown.
+     */
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Get the name of every id given out so far.
+     * @return New array of category names, indexed by id.
+     */
+    public String[] getNames() {
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * Get the amount of ids given out so far. Ids go from 0 up to this, so it
+     * is the size of an array indexed by id.
+     * @return Dictionary size.
+     */
+    public int getIdCount() {
+        return names.size();
+    }
+
+    /**
+     * Remove all types from the list. Ids are kept. Notifies change
+     * listeners.
      */
     public void clear() {
         list.clear();
@@ -140,4 +206,12 @@ public class CategoryList {
         listeners.add(l);
     }
 
+    /**
+     * Remove a CategoriesChangeListener.
+     * @param l CategoriesChangeListener to remove.
+     */
+    public void removeTypesChangeListener(CategoriesChangeListener l) {
+        listeners.remove(l);
+    }
+
 }
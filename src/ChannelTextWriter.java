@@ -0,0 +1,159 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Encodes text straight into a FileChannel, used to write text (v1) saves.
+ * <p>
+ * Characters are copied into a fixed char buffer, encoded into a fixed
+ * direct byte buffer and written to the channel whenever that fills up, so
+ * memory use does not depend on how much is written and appending a String
+ * does not allocate.
+ */
+final class ChannelTextWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final char[] chars = new char[BUFFER_SIZE / 4];
+    private final CharBuffer charBuf = CharBuffer.wrap(chars);
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final char[] money = new char[Money.MAX_CHARS];
+    private int length = 0; // chars waiting to be encoded
+
+    /**
+     * Create a writer.
+     * @param channel Channel to write to, at its current position.
+     * @param charset Charset to encode with. Unmappable characters are
+     *                replaced, as with an OutputStreamWriter.
+     */
+    ChannelTextWriter(FileChannel channel, Charset charset) {
+        this.channel = channel;
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Append a String. Null is written as "null".
+     * @param s String to write.
+     * @return This writer.
+     * @throws IOException If the channel cannot be written.
+     */
+    ChannelTextWriter append(String s) throws IOException {
+        if (s == null) {
+            s = "null";
+        }
+        int start = 0;
+        while (start < s.length()) {
+            if (length == chars.length) {
+                encode(false);
+            }
+            int end = Math.min(s.length(), start + chars.length - length);
+            s.getChars(start, end, chars, length);
+            length += end - start;
+            start = end;
+        }
+        return this;
+    }
+
+    /**
+     * Append a String, leaving out every occurrence of a character.
+     * @param s String to write.
+     * @param skip Character to leave out.
+     * @return This writer.
+     * @throws IOException If the channel cannot be written.
+     */
+    ChannelTextWriter appendWithout(String s, char skip) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != skip) {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Append an amount of cents formatted as <code>Money.format()</code>
+     * does, without creating a String.
+     * @param cents Amount in cents.
+     * @return This writer.
+     * @throws IOException If the channel cannot be written.
+     */
+    ChannelTextWriter appendCents(long cents) throws IOException {
+        for (int i = Money.getChars(cents, money); i < money.length; i++) {
+            append(money[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Append a character.
+     * @param c Character to write.
+     * @return This writer.
+     * @throws IOException If the channel cannot be written.
+     */
+    ChannelTextWriter append(char c) throws IOException {
+        if (length == chars.length) {
+            encode(false);
+        }
+        chars[length++] = c;
+        return this;
+    }
+
+    /**
+     * Encode the waiting characters into the byte buffer, writing it out
+     * whenever it is full.
+     * @param endOfInput True if no more characters follow.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        charBuf.limit(length);
+        charBuf.position(0);
+        while (true) {
+            CoderResult result = encoder.encode(charBuf, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        // Keep a trailing high surrogate for the next round
+        int left = charBuf.remaining();
+        System.arraycopy(chars, charBuf.position(), chars, 0, left);
+        length = left;
+    }
+
+    /**
+     * Write the byte buffer to the channel.
+     */
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /**
+     * Encode and write everything appended so far, then flush the encoder.
+     * The channel is not closed.
+     * @throws IOException If the channel cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        encode(true);
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+        drain();
+    }
+
+}
@@ -0,0 +1,403 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes block-compressed saves. See SaveFormat.md.
+ * <p>
+ * Rows are grouped into blocks of at most <code>BLOCK_ROWS</code> rows of a
+ * single BudgetList, and every block is compressed on its own. An index at
+ * the end of the file records where each block is, so a reader can
+ * decompress just the blocks it needs with <code>readIndex()</code> and
+ * <code>readBlock()</code>.
+ */
+public final class CompressedSave {
+
+    public static final byte[] MAGIC = { (byte) 0x89, 'M', 'B', 'Z' };
+    public static final short VERSION = 1;
+
+    /**
+     * Maximum amount of rows in a block.
+     */
+    public static final int BLOCK_ROWS = 4096;
+
+    /**
+     * Size of the fixed header: magic, version, budget.
+     */
+    private static final int HEADER_SIZE = MAGIC.length + 2 + 8;
+    /**
+     * Size of one index entry: which, first row, row count, offset,
+     * compressed and uncompressed length.
+     */
+    private static final int ENTRY_SIZE = 4 + 4 + 4 + 8 + 4 + 4;
+    /**
+     * Size of the footer: index offset and block count.
+     */
+    private static final int FOOTER_SIZE = 8 + 4;
+
+    private CompressedSave() { }
+
+    /**
+     * A compressed block of rows, as listed in the index.
+     */
+    public static final class Block {
+
+        private final BudgetHandler.Which which;
+        private final int firstRow;
+        private final int rowCount;
+        private final long offset;
+        private final int compressedLength;
+        private final int length;
+
+        private Block(BudgetHandler.Which which, int firstRow, int rowCount,
+                      long offset, int compressedLength, int length) {
+            this.which = which;
+            this.firstRow = firstRow;
+            this.rowCount = rowCount;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.length = length;
+        }
+
+        /**
+         * Get the BudgetList the rows belong to.
+         * @return Which BudgetList.
+         */
+        public BudgetHandler.Which getWhich() {
+            return which;
+        }
+
+        /**
+         * Get the index of the first row of the block in its BudgetList.
+         * @return First row index.
+         */
+        public int getFirstRow() {
+            return firstRow;
+        }
+
+        /**
+         * Get the amount of rows in the block.
+         * @return Row count.
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+    }
+
+    /**
+     * Check if a file starts with the compressed save magic bytes.
+     * @param f File to check.
+     * @return True if the file is a compressed save, false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isCompressed(File f) throws IOException {
+        return Utils.startsWith(f, MAGIC);
+    }
+
+    /**
+     * Write a snapshot to a file as a compressed save.
+     * @param f File to write.
+     * @param snapshot BudgetSnapshot to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(File f, BudgetSnapshot snapshot)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream data = new DataOutputStream(bytes);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        byte[] compressed = new byte[64 * 1024];
+        char[] money = new char[Money.MAX_CHARS];
+        List<Block> blocks = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Header: uncompressed, it is small and needed right away
+            data.write(MAGIC);
+            data.writeShort(VERSION);
+            data.writeLong(snapshot.getBudgetAmount().getCents());
+            data.writeInt(snapshot.getCategories().size());
+            for (String cat : snapshot.getCategories()) {
+                data.writeUTF(cat);
+            }
+            data.flush();
+            long offset = Utils.writeFully(channel, ByteBuffer.wrap(
+                    bytes.toByteArray()));
+            bytes.reset();
+
+            for (BudgetHandler.Which which : BudgetHandler.Which.values()) {
+                int count = snapshot.getRowCount(which);
+                for (int first = 0; first < count; first += BLOCK_ROWS) {
+                    int rows = Math.min(BLOCK_ROWS, count - first);
+                    try {
+                        snapshot.forEachRow(which, first, first + rows,
+                                row -> {
+                            try {
+                                writeString(data, row.getDate());
+                                writeString(data, row.getCategory());
+                                writeString(data, row.getName());
+                                writeCents(data, row.getCents(), money);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    data.flush();
+
+                    deflater.reset();
+                    deflater.setInput(bytes.toByteArray());
+                    deflater.finish();
+                    int compressedLength = 0;
+                    while (!deflater.finished()) {
+                        if (compressedLength == compressed.length) {
+                            compressed = Arrays.copyOf(compressed,
+                                    compressed.length * 2);
+                        }
+                        compressedLength += deflater.deflate(compressed,
+                                compressedLength,
+                                compressed.length - compressedLength);
+                    }
+                    Utils.writeFully(channel, ByteBuffer.wrap(compressed, 0,
+                            compressedLength));
+                    blocks.add(new Block(which, first, rows, offset,
+                            compressedLength, bytes.size()));
+                    offset += compressedLength;
+                    bytes.reset();
+                }
+            }
+
+            // Index and footer
+            ByteBuffer index = ByteBuffer.allocate(
+                    blocks.size() * ENTRY_SIZE + FOOTER_SIZE);
+            for (Block block : blocks) {
+                index.putInt(block.which.getIndex());
+                index.putInt(block.firstRow);
+                index.putInt(block.rowCount);
+                index.putLong(block.offset);
+                index.putInt(block.compressedLength);
+                index.putInt(block.length);
+            }
+            index.putLong(offset);
+            index.putInt(blocks.size());
+            index.flip();
+            Utils.writeFully(channel, index);
+            channel.force(false);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Read every block of a compressed save into a BudgetHandler.
+     * @param f File to read.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @throws IOException If the file cannot be read or is not valid.
+     */
+    public static void read(File f, BudgetHandler.Loader loader)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            readHeader(channel, loader);
+            Inflater inflater = new Inflater();
+            try {
+                for (Block block : readIndex(channel)) {
+                    for (BudgetRow row : readBlock(channel, block, inflater)) {
+                        loader.add(block.which, row);
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Read the budget and categories of a compressed save.
+     * @param channel Channel of the save file.
+     * @param loader Loader of the BudgetHandler to set the values of.
+     * @throws IOException If the header cannot be read or is not valid.
+     */
+    public static void readHeader(FileChannel channel,
+            BudgetHandler.Loader loader) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException("Save file is too short.");
+        }
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel)));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Save file is not a compressed save.");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compressed save version " +
+                    version);
+        }
+        loader.setBudget(Money.ofCents(in.readLong()));
+        int count = in.readInt();
+        // Every category takes at least the two bytes of its length
+        if (count < 0 || count > channel.size() / 2) {
+            throw new IOException("Corrupt category list.");
+        }
+        String[] cats = new String[count];
+        for (int i = 0; i < cats.length; i++) {
+            cats[i] = in.readUTF();
+        }
+        loader.setCategories(cats);
+    }
+
+    /**
+     * Read the block index from the end of a compressed save.
+     * @param channel Channel of the save file.
+     * @return Blocks, in file order.
+     * @throws IOException If the index cannot be read or is not valid.
+     */
+    public static List<Block> readIndex(FileChannel channel)
+            throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE + FOOTER_SIZE) {
+            throw new IOException("Save file is too short.");
+        }
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+        Utils.readFully(channel, footer, size - FOOTER_SIZE);
+        footer.flip();
+        long indexOffset = footer.getLong();
+        int count = footer.getInt();
+        if (count < 0 || indexOffset < HEADER_SIZE ||
+                indexOffset + (long) count * ENTRY_SIZE !=
+                        size - FOOTER_SIZE) {
+            throw new IOException("Corrupt block index.");
+        }
+        ByteBuffer index = ByteBuffer.allocate(count * ENTRY_SIZE);
+        Utils.readFully(channel, index, indexOffset);
+        index.flip();
+        List<Block> blocks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Block block = new Block(BudgetHandler.Which.get(index.getInt()),
+                    index.getInt(), index.getInt(), index.getLong(),
+                    index.getInt(), index.getInt());
+            // Checked before anything is allocated for the block
+            if (block.rowCount < 0 || block.rowCount > BLOCK_ROWS ||
+                    block.offset < HEADER_SIZE ||
+                    block.compressedLength < 0 ||
+                    block.compressedLength > indexOffset - block.offset ||
+                    block.length < 0 || block.length >
+                            block.rowCount * 4L * (2 + 0xFFFF)) {
+                throw new IOException("Corrupt block index.");
+            }
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    /**
+     * Decompress the rows of one block.
+     * @param channel Channel of the save file.
+     * @param block Block to read, from <code>readIndex()</code>.
+     * @return Rows of the block, in order.
+     * @throws IOException If the block cannot be read or is not valid.
+     */
+    public static List<BudgetRow> readBlock(FileChannel channel, Block block)
+            throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            return readBlock(channel, block, inflater);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static List<BudgetRow> readBlock(FileChannel channel, Block block,
+            Inflater inflater) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength);
+        Utils.readFully(channel, compressed, block.offset);
+        byte[] bytes = new byte[block.length];
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, block.compressedLength);
+        try {
+            int length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                int n = inflater.inflate(bytes, length,
+                        bytes.length - length);
+                if (n == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != bytes.length) {
+                throw new IOException("Block is shorter than its index says.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block: " + e.getMessage(), e);
+        }
+
+        List<BudgetRow> rows = new ArrayList<>(block.rowCount);
+        String[] fields = new String[4];
+        int position = 0;
+        try {
+            for (int r = 0; r < block.rowCount; r++) {
+                for (int i = 0; i < fields.length; i++) {
+                    int length = ((bytes[position] & 0xFF) << 8) |
+                            (bytes[position + 1] & 0xFF);
+                    fields[i] = new String(bytes, position + 2, length,
+                            StandardCharsets.UTF_8);
+                    position += 2 + length;
+                }
+                rows.add(new BudgetRow(fields[0], fields[1], fields[2],
+                        fields[3]));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Block has fewer rows than its index says.");
+        }
+        return rows;
+    }
+
+    /**
+     * Write a String as its UTF-8 byte length (unsigned short) followed by
+     * the bytes.
+     */
+    private static void writeString(DataOutputStream data, String s)
+            throws IOException {
+        byte[] bytes = String.valueOf(s).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Value too long to save: " +
+                    bytes.length + " bytes");
+        }
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Write an amount as <code>writeString()</code> would write its
+     * <code>Money.format()</code> text, without creating a String.
+     * @param money Buffer of <code>Money.MAX_CHARS</code> characters.
+     */
+    private static void writeCents(DataOutputStream data, long cents,
+            char[] money) throws IOException {
+        int start = Money.getChars(cents, money);
+        data.writeShort(money.length - start);
+        for (int i = start; i < money.length; i++) {
+            data.write(money[i]); // ASCII, so one UTF-8 byte each
+        }
+    }
+
+}
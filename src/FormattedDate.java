@@ -22,6 +22,14 @@ public final class FormattedDate {
      * Index of the day value from <code>getFormattedDateValues()</code>.
      */
     public static final int DAY_INDEX = 1;
+    /**
+     * Packed value of a date that <code>pack()</code> cannot parse.
+     */
+    public static final int UNPACKED = -1;
+    /**
+     * Highest day of the month that a formatted date can have.
+     */
+    public static final int MAX_DAY = 31;
 
     private FormattedDate() { }
 
@@ -52,14 +60,22 @@ public final class FormattedDate {
     }
 
     /**
-     * Get month value from string.
+     * Get month value from string. Both the names of
+     * <code>getMonthName()</code> and the English names are understood.
      * @param month Month string.
      * @return Integer value of the month.
      * @throws IllegalArgumentException If no value is found for the string.
      */
     public static int getMonthValue(String month)
             throws IllegalArgumentException {
-        return Month.valueOf(month.trim().toUpperCase()).getValue();
+        String name = month.trim();
+        for (Month m : Month.values()) {
+            if (name.equalsIgnoreCase(
+                    m.getDisplayName(TextStyle.FULL, Locale.getDefault()))) {
+                return m.getValue();
+            }
+        }
+        return Month.valueOf(name.toUpperCase(Locale.ROOT)).getValue();
     }
 
     /**
@@ -120,11 +136,53 @@ public final class FormattedDate {
         return ret;
     }
 
+    /**
+     * Pack a formatted date into an integer.
+     * @param fdate Formatted date string.
+     * @return Month in the upper bits and day in the lowest byte, 0 if the
+     * date is empty or <code>UNPACKED</code> if it cannot be parsed.
+     */
+    public static int pack(String fdate) {
+        if (fdate == null || fdate.isEmpty()) {
+            return 0;
+        }
+        try {
+            int[] values = getFormattedDateValues(fdate);
+            return (values[MONTH_INDEX] << 8) | values[DAY_INDEX];
+        } catch (IllegalArgumentException e) {
+            return UNPACKED;
+        }
+    }
+
+    /**
+     * Unpack a date packed by <code>pack()</code>.
+     * @param packed Packed date.
+     * @return Formatted date string, or "" if the date is unknown.
+     */
+    public static String unpack(int packed) {
+        int month = packed >>> 8;
+        int day = packed & 0xFF;
+        if (month < 1 || month > 12 || day < 1 || day > MAX_DAY) {
+            return "";
+        }
+        return dateFormat(month, day);
+    }
+
+    /**
+     * Get the day of the month of a date packed by <code>pack()</code>.
+     * @param packed Packed date.
+     * @return Day of the month, 0 if the date is unknown.
+     */
+    public static int unpackDay(int packed) {
+        return (packed > 0) ? packed & 0xFF : 0;
+    }
+
     /**
      * Get the values from a formatted date string.
      * @param fdate Formatted date string.
      * @return Array containing [month, day] expressed as integers.
-     * @throws IllegalArgumentException If fdate is not properly formatted.
+     * @throws IllegalArgumentException If fdate is not properly formatted or
+     * the day is not between 1 and <code>MAX_DAY</code>.
      */
     public static int[] getFormattedDateValues(String fdate)
         throws IllegalArgumentException {
@@ -141,6 +199,10 @@ public final class FormattedDate {
                 throw new IllegalArgumentException(
                         "fdate not formatted correctly: could not parse day.");
             }
+            if (day < 1 || day > MAX_DAY) {
+                throw new IllegalArgumentException(
+                        "fdate not formatted correctly: day out of range.");
+            }
 
             month = getMonthValue(split[0]); // Throws if invalid
             return new int[]{ month, day };
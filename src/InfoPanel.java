@@ -1,6 +1,7 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.util.List;
 
 /**
  * Information panel.
@@ -16,7 +17,8 @@ public class InfoPanel extends JPanel {
     private String sign;
 
     public InfoPanel(BudgetHandler budgetHandler) {
-        budgetField = new NumberTextField(budgetHandler.getBudget(), 2);
+        budgetField = new NumberTextField(0, 2);
+        budgetField.setMoney(budgetHandler.getBudgetAmount());
         spentLabel = new JLabel("- $0.00"); // after budget
         moneyLeftLabel = new JLabel(" = $0.00");
 
@@ -25,20 +27,23 @@ public class InfoPanel extends JPanel {
         spentLabel.setToolTipText("Expenses");
         moneyLeftLabel.setToolTipText("Money left after expenses");
 
-        budgetHandler.addBudgetEventListener(() -> {
+        budgetHandler.addBudgetChangeListener(events -> {
+            if (!affectsMoney(events)) {
+                return; // Only names, dates or categories changed
+            }
             // Set positive sign if spent is negative
-            setSign((budgetHandler.getMoneySpent() < 0) ?
-                POSITIVE : NEGATIVE);
+            Money spent = budgetHandler.getSpentAmount();
+            setSign((spent.signum() < 0) ? POSITIVE : NEGATIVE);
 
-            setMoneySpent(Math.abs(budgetHandler.getMoneySpent()));
-            setMoneyLeft(budgetHandler.getRemainingBudget());
+            setMoneySpent(spent.abs());
+            setMoneyLeft(budgetHandler.getRemainingAmount());
         });
 
         // Update budget when user enters value
         addActionListener(e -> {
-            double bud = budgetHandler.getBudget();
+            Money bud = budgetHandler.getBudgetAmount();
             try {
-                bud = getBudget();
+                bud = getBudgetAmount();
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(null,
                         "Error in budget: " + ex.getMessage(),
@@ -46,7 +51,7 @@ public class InfoPanel extends JPanel {
                         JOptionPane.ERROR_MESSAGE);
             } finally {
                 budgetHandler.setBudget(bud);
-                setBudgetField(budgetHandler.getBudget());
+                setBudgetField(budgetHandler.getBudgetAmount());
             }
         });
 
@@ -57,6 +62,21 @@ public class InfoPanel extends JPanel {
         this.add(moneyLeftLabel);
     }
 
+    /**
+     * Check if budget changes can change the amounts shown.
+     * @param events Changes to check.
+     * @return True if the budget or the sum of any rows changed.
+     */
+    private static boolean affectsMoney(List<BudgetEvent> events) {
+        for (BudgetEvent e : events) {
+            if (e.getType() != BudgetEvent.Type.CATEGORIES_CHANGED &&
+                    !(e.isRowChange() && e.getCentsDelta() == 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Set the sign of the budget "math" (The sign shown before the expenses).
      * @param sign POSITIVE or NEGATIVE sign.
@@ -75,6 +95,14 @@ public class InfoPanel extends JPanel {
         budgetField.setNumber(n);
     }
 
+    /**
+     * Set the amount of the budget text field.
+     * @param money Budget amount.
+     */
+    public void setBudgetField(Money money) {
+        budgetField.setMoney(money);
+    }
+
     /**
      * Get budget value inputted.
      * @return BudgetHandler value.
@@ -83,6 +111,15 @@ public class InfoPanel extends JPanel {
         return budgetField.getNumber();
     }
 
+    /**
+     * Get the exact budget amount inputted.
+     * @return BudgetHandler amount.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    public Money getBudgetAmount() throws NumberFormatException {
+        return budgetField.getMoney();
+    }
+
     /**
      * Get the sign.
      * @return The sign shown after the budget amount.
@@ -99,6 +136,14 @@ public class InfoPanel extends JPanel {
         moneyLeftLabel.setText(" = $" + String.format("%.02f", money));
     }
 
+    /**
+     * Update the money left label in the info panel.
+     * @param money Money left
+     */
+    public void setMoneyLeft(Money money) {
+        moneyLeftLabel.setText(" = $" + money);
+    }
+
     /**
      * Update the money spent label in the info panel appropriately.
      * @param spent
@@ -107,6 +152,14 @@ public class InfoPanel extends JPanel {
         spentLabel.setText(sign + " $" + String.format("%.02f", spent));
     }
 
+    /**
+     * Update the money spent label in the info panel appropriately.
+     * @param spent Money spent, without its sign.
+     */
+    public void setMoneySpent(Money spent) {
+        spentLabel.setText(sign + " $" + spent);
+    }
+
     /**
      * Add an ActionListener to the text field that handles budget input.
      * @param l ActionListener.
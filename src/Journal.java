@@ -0,0 +1,411 @@
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+import static java.util.logging.Logger.getAnonymousLogger;
+
+/**
+ * An append-only log of the changes made to a BudgetHandler since its save
+ * file was last written in full. Saving then only has to append the new
+ * changes instead of rewriting the whole file.
+ * <p>
+ * The journal lives next to the save file (see <code>getFile()</code>). It
+ * starts with a header identifying the snapshot it applies to, followed by
+ * length-prefixed records. A journal whose header does not match its save
+ * file is ignored, and a record cut short by a crash ends the replay.
+ */
+public class Journal {
+
+    /**
+     * Extension added to the save file name.
+     */
+    public static final String EXTENSION = "journal";
+
+    private static final int MAGIC = 0x4D42464A; // "MBFJ"
+
+    // Record types
+    private static final byte ROW_ADDED = 1;
+    private static final byte ROWS_REMOVED = 2;
+    private static final byte ROW_CHANGED = 3;
+    private static final byte CATEGORIES_CHANGED = 5;
+    private static final byte BUDGET_CENTS_CHANGED = 6;
+
+    /**
+     * Smallest journal size that triggers compaction.
+     */
+    private static final long MIN_COMPACT_SIZE = 64 * 1024;
+    /**
+     * Compact once the journal grows past this fraction of the save size.
+     */
+    private static final int COMPACT_RATIO = 4;
+
+    private final File saveFile;
+    private final File journalFile;
+    private final BudgetHandler budgetHandler;
+
+    /**
+     * Records not yet appended to the journal file.
+     */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(record);
+    private final TableModelListener[] tableListeners;
+    private final CategoriesChangeListener categoriesListener;
+    private final BudgetEventListener budgetListener;
+    private Money lastBudget;
+    /**
+     * Set when a change happened that cannot be written as a record.
+     */
+    private boolean needsSnapshot = false;
+    private boolean closed = false;
+
+    /**
+     * Create a Journal that records changes made to a BudgetHandler from now
+     * on. The save file should be up to date with the BudgetHandler, apart
+     * from the changes already in its journal.
+     * @param saveFile Save file the journal belongs to.
+     * @param budgetHandler BudgetHandler to record.
+     */
+    public Journal(File saveFile, BudgetHandler budgetHandler) {
+        this.saveFile = saveFile;
+        this.journalFile = getFile(saveFile);
+        this.budgetHandler = budgetHandler;
+        lastBudget = budgetHandler.getBudgetAmount();
+
+        BudgetHandler.Which[] whiches = BudgetHandler.Which.values();
+        tableListeners = new TableModelListener[whiches.length];
+        for (BudgetHandler.Which which : whiches) {
+            tableListeners[which.getIndex()] = e -> rowsChanged(which, e);
+            budgetHandler.getBudgetList(which)
+                    .addTableModelListener(tableListeners[which.getIndex()]);
+        }
+        categoriesListener = this::categoriesChanged;
+        budgetHandler.getCategories().addTypesChangeListener(
+                categoriesListener);
+        budgetListener = this::budgetChanged;
+        budgetHandler.addBudgetEventListener(budgetListener);
+    }
+
+    /**
+     * Get the journal file of a save file.
+     * @param saveFile Save file.
+     * @return The journal file next to it.
+     */
+    public static File getFile(File saveFile) {
+        return new File(saveFile.getPath() + "." + EXTENSION);
+    }
+
+    /**
+     * Check if there are changes that have not been appended yet.
+     * @return True if there are pending changes.
+     */
+    public boolean hasChanges() {
+        return pending.size() > 0 || needsSnapshot;
+    }
+
+    /**
+     * Check if the journal should be compacted into a full save, either
+     * because it grew too large compared to the save file or because a change
+     * could not be recorded.
+     * @return True if a full save should be written instead of appending.
+     */
+    public boolean needsCompaction() {
+        if (needsSnapshot || !saveFile.exists()) {
+            return true;
+        }
+        long size = journalFile.length() + pending.size();
+        return size > Math.max(MIN_COMPACT_SIZE,
+                saveFile.length() / COMPACT_RATIO);
+    }
+
+    /**
+     * Take the pending changes, to be appended with <code>append()</code>.
+     * @return The pending records, possibly empty.
+     */
+    public byte[] takePending() {
+        byte[] records = pending.toByteArray();
+        pending.reset();
+        return records;
+    }
+
+    /**
+     * Append records to the journal file. May be called from any thread, but
+     * appends must not overlap with each other or with <code>delete()</code>.
+     * @param records Records from <code>takePending()</code>.
+     * @throws IOException If the journal cannot be written.
+     */
+    public void append(byte[] records) throws IOException {
+        if (records.length == 0) {
+            return;
+        }
+        boolean created = !journalFile.exists();
+        try (FileOutputStream file = new FileOutputStream(journalFile, true)) {
+            if (created) {
+                file.write(header(saveFile));
+            }
+            file.write(records);
+            file.getFD().sync();
+        }
+        getAnonymousLogger().info("Appended " + records.length +
+                " bytes to journal.");
+    }
+
+    /**
+     * Note that a snapshot of the BudgetHandler has been taken to be written
+     * in full, so the changes recorded so far are no longer needed.
+     */
+    public void snapshotTaken() {
+        pending.reset();
+        needsSnapshot = false;
+        lastBudget = budgetHandler.getBudgetAmount();
+    }
+
+    /**
+     * Force the next save to be written in full, for example because
+     * appending failed and records were lost.
+     */
+    public void requireSnapshot() {
+        needsSnapshot = true;
+    }
+
+    /**
+     * Delete the journal file after the save file has been written in full.
+     * May be called from any thread, see <code>append()</code>.
+     * @throws IOException If the journal file cannot be deleted.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    /**
+     * Stop recording changes.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (BudgetHandler.Which which : BudgetHandler.Which.values()) {
+            budgetHandler.getBudgetList(which).removeTableModelListener(
+                    tableListeners[which.getIndex()]);
+        }
+        budgetHandler.getCategories().removeTypesChangeListener(
+                categoriesListener);
+        budgetHandler.removeBudgetEventListener(budgetListener);
+    }
+
+    /**
+     * Replay the journal of a save file, if there is one that belongs to it.
+     * @param saveFile Save file that has just been read.
+     * @param loader Loader of the BudgetHandler the save was read into.
+     * @throws IOException If the journal cannot be read.
+     */
+    public static void replay(File saveFile, BudgetHandler.Loader loader)
+            throws IOException {
+        File journalFile = getFile(saveFile);
+        if (!journalFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(journalFile)))) {
+            byte[] expected = header(saveFile);
+            byte[] actual = new byte[expected.length];
+            in.readFully(actual);
+            if (!Arrays.equals(expected, actual)) {
+                getAnonymousLogger().log(Level.WARNING,
+                        "Journal does not belong to the save, ignoring it.");
+                return;
+            }
+            int count = 0;
+            byte[] bytes = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                    if (length < 0) {
+                        throw new EOFException();
+                    }
+                    if (bytes.length < length) {
+                        bytes = new byte[length];
+                    }
+                    in.readFully(bytes, 0, length);
+                } catch (EOFException e) {
+                    break; // End of journal, or a record cut short
+                }
+                try {
+                    apply(new DataInputStream(
+                            new ByteArrayInputStream(bytes, 0, length)),
+                            loader);
+                } catch (IndexOutOfBoundsException e) {
+                    throw new IOException("Journal does not match the save.",
+                            e);
+                }
+                count++;
+            }
+            getAnonymousLogger().info("Replayed " + count +
+                    " journal records.");
+        } catch (EOFException e) {
+            getAnonymousLogger().log(Level.WARNING,
+                    "Journal header is incomplete, ignoring it.");
+        }
+    }
+
+    /**
+     * Apply a single record.
+     */
+    private static void apply(DataInputStream in, BudgetHandler.Loader loader)
+            throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ROW_ADDED:
+                loader.insert(BudgetHandler.Which.get(in.readByte()),
+                        in.readInt(), readRow(in));
+                break;
+            case ROWS_REMOVED:
+                loader.remove(BudgetHandler.Which.get(in.readByte()),
+                        in.readInt(), in.readInt());
+                break;
+            case ROW_CHANGED:
+                loader.set(BudgetHandler.Which.get(in.readByte()),
+                        in.readInt(), readRow(in));
+                break;
+            case BUDGET_CENTS_CHANGED:
+                loader.setBudget(Money.ofCents(in.readLong()));
+                break;
+            case CATEGORIES_CHANGED:
+                String[] cats = new String[in.readInt()];
+                for (int i = 0; i < cats.length; i++) {
+                    cats[i] = in.readUTF();
+                }
+                loader.setCategories(cats);
+                break;
+            default:
+                throw new IOException("Unknown journal record " + type);
+        }
+    }
+
+    private void rowsChanged(BudgetHandler.Which which, TableModelEvent e) {
+        BudgetList list = budgetHandler.getBudgetList(which);
+        int first = e.getFirstRow();
+        int last = Math.min(e.getLastRow(), list.getRowCount() - 1);
+        if (first == TableModelEvent.HEADER_ROW ||
+                e.getLastRow() == Integer.MAX_VALUE) {
+            // Structure or whole table changed, nothing precise to record
+            needsSnapshot = true;
+            return;
+        }
+        try {
+            switch (e.getType()) {
+                case TableModelEvent.INSERT:
+                    for (int r = first; r <= last; r++) {
+                        out.writeByte(ROW_ADDED);
+                        out.writeByte(which.getIndex());
+                        out.writeInt(r);
+                        writeRow(list, r);
+                        commit();
+                    }
+                    break;
+                case TableModelEvent.UPDATE:
+                    for (int r = first; r <= last; r++) {
+                        out.writeByte(ROW_CHANGED);
+                        out.writeByte(which.getIndex());
+                        out.writeInt(r);
+                        writeRow(list, r);
+                        commit();
+                    }
+                    break;
+                case TableModelEvent.DELETE:
+                    out.writeByte(ROWS_REMOVED);
+                    out.writeByte(which.getIndex());
+                    out.writeInt(first);
+                    out.writeInt(e.getLastRow());
+                    commit();
+                    break;
+            }
+        } catch (IOException ex) {
+            needsSnapshot = true;
+        }
+    }
+
+    private void categoriesChanged() {
+        try {
+            List<String> cats = budgetHandler.getCategories().getList();
+            out.writeByte(CATEGORIES_CHANGED);
+            out.writeInt(cats.size());
+            for (String cat : cats) {
+                out.writeUTF(cat);
+            }
+            commit();
+        } catch (IOException ex) {
+            needsSnapshot = true;
+        }
+    }
+
+    private void budgetChanged() {
+        if (budgetHandler.getBudgetAmount().equals(lastBudget)) {
+            return;
+        }
+        lastBudget = budgetHandler.getBudgetAmount();
+        try {
+            out.writeByte(BUDGET_CENTS_CHANGED);
+            out.writeLong(lastBudget.getCents());
+            commit();
+        } catch (IOException ex) {
+            needsSnapshot = true;
+        }
+    }
+
+    /**
+     * Move the record being written to the pending records, prefixed with
+     * its length.
+     */
+    private void commit() throws IOException {
+        out.flush();
+        int length = record.size();
+        pending.write(length >>> 24);
+        pending.write(length >>> 16);
+        pending.write(length >>> 8);
+        pending.write(length);
+        record.writeTo(pending);
+        record.reset();
+    }
+
+    private void writeRow(BudgetList list, int row) throws IOException {
+        for (int col = 0; col < 4; col++) {
+            out.writeUTF(String.valueOf(list.getValueAt(row, col)));
+        }
+    }
+
+    private static BudgetRow readRow(DataInputStream in) throws IOException {
+        return new BudgetRow(in.readUTF(), in.readUTF(), in.readUTF(),
+                in.readUTF());
+    }
+
+    /**
+     * Header of a journal belonging to a save file. It identifies the save by
+     * its length and modification time, so a journal left over from an
+     * earlier save is not replayed on top of a newer one.
+     */
+    private static byte[] header(File saveFile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(20);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeLong(saveFile.length());
+        data.writeLong(saveFile.lastModified());
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,354 @@
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonArray;
+import com.eclipsesource.json.JsonValue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+
+import static java.util.logging.Logger.getAnonymousLogger;
+
+/**
+ * Reads and writes the JSON save format described in SaveFormat.md.
+ * <p>
+ * Neither direction builds a document of the whole file. The writer streams
+ * every row straight to the output, and the reader walks the top-level
+ * object itself, handing only one value at a time (such as a single row
+ * array) to minimal-json. Memory use therefore depends on the rows kept,
+ * not on the size of the file.
+ */
+public final class JsonSave {
+
+    private static final String BUDGET = "budget";
+    private static final String CATEGORIES = "categories";
+
+    /**
+     * Amount of values in a row array.
+     */
+    private static final int ROW_SIZE = 4;
+
+    private JsonSave() { }
+
+    /**
+     * Check if a file looks like a JSON save, that is, if its first
+     * non-whitespace character opens an object.
+     * @param f File to check.
+     * @return True if the file is a JSON save, false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isJson(File f) throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(f),
+                StandardCharsets.UTF_8)) {
+            int c;
+            do {
+                c = in.read();
+            } while (c == ' ' || c == '\t' || c == '\n' || c == '\r' ||
+                    c == '\uFEFF');
+            return c == '{';
+        }
+    }
+
+    /**
+     * Write a snapshot to a file as JSON.
+     * @param f File to write.
+     * @param snapshot BudgetSnapshot to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(File f, BudgetSnapshot snapshot)
+            throws IOException {
+        try (FileOutputStream out = new FileOutputStream(f);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+                     StandardCharsets.UTF_8))) {
+            writer.write("{\n  \"" + BUDGET + "\":");
+            writer.write(snapshot.getBudgetAmount().toString());
+            writer.write(",\n  \"" + CATEGORIES + "\":[");
+            boolean first = true;
+            for (String cat : snapshot.getCategories()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                Json.value(cat).writeTo(writer);
+                first = false;
+            }
+            writer.write(']');
+            char[] money = new char[Money.MAX_CHARS];
+            for (BudgetHandler.Which which : BudgetHandler.Which.values()) {
+                writer.write(",\n  ");
+                Json.value(which.getName()).writeTo(writer);
+                writer.write(":[");
+                try {
+                    snapshot.forEachRow(which, row -> {
+                        try {
+                            writer.write((row.getIndex() == 0)
+                                    ? "\n    " : ",\n    ");
+                            writeRow(writer, row, money);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                writer.write("\n  ]");
+            }
+            writer.write("\n}\n");
+            writer.flush();
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Read a JSON save into a BudgetHandler.
+     * @param f File to read.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @throws IOException If the file cannot be read or is not valid.
+     */
+    public static void read(File f, BudgetHandler.Loader loader)
+            throws IOException {
+        try (Reader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(f), StandardCharsets.UTF_8))) {
+            read(in, loader);
+        }
+    }
+
+    /**
+     * Read a JSON save into a BudgetHandler.
+     * @param in Reader positioned at the start of the save.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @throws IOException If the save cannot be read or is not valid.
+     */
+    public static void read(Reader in, BudgetHandler.Loader loader)
+            throws IOException {
+        Tokenizer t = new Tokenizer(in);
+        StringBuilder text = new StringBuilder(128);
+        t.skipByteOrderMark();
+        t.expect('{');
+        if (t.skip('}')) {
+            return;
+        }
+        do {
+            String name = parse(t, text).asString();
+            t.expect(':');
+            BudgetHandler.Which which = null;
+            for (BudgetHandler.Which w : BudgetHandler.Which.values()) {
+                if (w.getName().equals(name)) {
+                    which = w;
+                }
+            }
+            if (which != null) {
+                readRows(t, text, which, loader);
+            } else if (BUDGET.equals(name)) {
+                loader.setBudget(parse(t, text).asDouble());
+            } else if (CATEGORIES.equals(name)) {
+                JsonArray cats = parse(t, text).asArray();
+                loader.setCategories(Utils.jsonArrayToString(cats));
+            } else {
+                t.readValue(text); // Unknown member, skip it
+            }
+        } while (t.skip(','));
+        t.expect('}');
+    }
+
+    /**
+     * Read an expense list array, one row array at a time.
+     */
+    private static void readRows(Tokenizer t, StringBuilder text,
+            BudgetHandler.Which which, BudgetHandler.Loader loader)
+            throws IOException {
+        t.expect('[');
+        if (t.skip(']')) {
+            return;
+        }
+        int ignored = 0;
+        do {
+            JsonValue value = parse(t, text);
+            if (value.isArray() && value.asArray().size() == ROW_SIZE) {
+                JsonArray row = value.asArray();
+                loader.add(which, new BudgetRow(
+                        asText(row.get(0)), asText(row.get(1)),
+                        asText(row.get(2)), asText(row.get(3))));
+            } else {
+                ignored++;
+            }
+        } while (t.skip(','));
+        t.expect(']');
+        if (ignored > 0) {
+            getAnonymousLogger().log(Level.WARNING, "Ignored " + ignored +
+                    " invalid rows in " + which.getName());
+        }
+    }
+
+    /**
+     * Write a row as an array.
+     * @param money Buffer of <code>Money.MAX_CHARS</code> characters to
+     *              format the amount in.
+     */
+    private static void writeRow(Writer writer, RowView row, char[] money)
+            throws IOException {
+        writer.write('[');
+        Json.value(String.valueOf(row.getDate())).writeTo(writer);
+        writer.write(',');
+        Json.value(String.valueOf(row.getCategory())).writeTo(writer);
+        writer.write(',');
+        Json.value(String.valueOf(row.getName())).writeTo(writer);
+        writer.write(',');
+        int start = Money.getChars(row.getCents(), money);
+        writer.write(money, start, money.length - start);
+        writer.write(']');
+    }
+
+    /**
+     * Get the text of a row value. Numbers keep their exact literal.
+     */
+    private static String asText(JsonValue value) {
+        return value.isString() ? value.asString() : value.toString();
+    }
+
+    /**
+     * Parse the next value with minimal-json.
+     */
+    private static JsonValue parse(Tokenizer t, StringBuilder text)
+            throws IOException {
+        t.readValue(text);
+        try {
+            return Json.parse(text.toString());
+        } catch (RuntimeException e) { // ParseException or wrong type
+            throw new IOException("Invalid JSON value: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Splits a JSON stream into values without interpreting them.
+     */
+    private static final class Tokenizer {
+
+        private final Reader in;
+        private int peeked = -2; // -2 = nothing peeked
+
+        Tokenizer(Reader in) {
+            this.in = in;
+        }
+
+        private int peek() throws IOException {
+            if (peeked == -2) {
+                peeked = in.read();
+            }
+            return peeked;
+        }
+
+        private int next() throws IOException {
+            int c = peek();
+            peeked = -2;
+            return c;
+        }
+
+        void skipByteOrderMark() throws IOException {
+            if (peek() == '\uFEFF') {
+                next();
+            }
+        }
+
+        private void skipWhitespace() throws IOException {
+            int c = peek();
+            while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                next();
+                c = peek();
+            }
+        }
+
+        /**
+         * Skip a character if it is next (ignoring whitespace).
+         * @return True if it was skipped.
+         */
+        boolean skip(char c) throws IOException {
+            skipWhitespace();
+            if (peek() == c) {
+                next();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) throws IOException {
+            if (!skip(c)) {
+                int found = peek();
+                throw new IOException("Expected '" + c + "' but found " +
+                        ((found < 0) ? "end of file" : "'" + (char) found +
+                                "'"));
+            }
+        }
+
+        /**
+         * Read the text of the next value, replacing the contents of text.
+         */
+        void readValue(StringBuilder text) throws IOException {
+            text.setLength(0);
+            skipWhitespace();
+            int depth = 0;
+            do {
+                int c = peek();
+                if (c < 0) {
+                    throw new IOException("Unexpected end of file");
+                } else if (c == '"') {
+                    readString(text);
+                } else if (c == '[' || c == '{') {
+                    depth++;
+                    text.append((char) next());
+                } else if (c == ']' || c == '}') {
+                    if (depth == 0) {
+                        break; // End of the enclosing value
+                    }
+                    depth--;
+                    text.append((char) next());
+                } else if (depth == 0 && (c == ',' || c == ' ' ||
+                        c == '\t' || c == '\n' || c == '\r')) {
+                    break; // End of a number or literal
+                } else {
+                    text.append((char) next());
+                }
+            } while (depth > 0 || !isComplete(text));
+        }
+
+        /**
+         * Check if a top-level value is complete: strings and containers
+         * end with their closing character, other values run until a
+         * delimiter.
+         */
+        private boolean isComplete(StringBuilder text) throws IOException {
+            char first = text.charAt(0);
+            return first == '"' || first == '[' || first == '{' ||
+                    peek() < 0;
+        }
+
+        private void readString(StringBuilder text) throws IOException {
+            text.append((char) next()); // Opening quote
+            while (true) {
+                int c = next();
+                if (c < 0) {
+                    throw new IOException("Unterminated string");
+                }
+                text.append((char) c);
+                if (c == '\\') {
+                    int escaped = next();
+                    if (escaped < 0) {
+                        throw new IOException("Unterminated string");
+                    }
+                    text.append((char) escaped);
+                } else if (c == '"') {
+                    return;
+                }
+            }
+        }
+    }
+
+}
@@ -27,6 +27,7 @@ public class MainWindow extends JFrame {
     private TabbedPane tabbedPane;
     private AddPanel addPanel;
     private InfoPanel infoPanel;
+    private JLabel statusLabel;
 
     /**
      * Create an instance of the main window and the program.
@@ -68,6 +69,10 @@ public class MainWindow extends JFrame {
         addPanel = new AddPanel();
         /* Save */
         SaveAction saveAction = new SaveAction(budgetHandler);
+        statusLabel = new JLabel(" ");
+        saveAction.addSaveStatusListener((status, message) ->
+                statusLabel.setText(message)
+        );
 
 
         // Shortcuts
@@ -118,17 +123,11 @@ public class MainWindow extends JFrame {
                 chooser.setFileFilter(Save.FILTER);
                 int chooserValue = chooser.showOpenDialog(this);
                 if (chooserValue == JFileChooser.APPROVE_OPTION) {
-                    // Clear budget
-                    budgetHandler.clear();
-                    infoPanel.clear();
-                    // Read file
-                    saveAction.setSaveFile(chooser.getSelectedFile());
+                    // Read first, so a save that cannot be read changes
+                    // nothing
                     try {
-                        budgetHandler.copy(saveAction.getSave().readSave(
-                                budgetHandler.getCategories().toArray(),
-                                trans
-                        ));
-                    } catch (FileNotFoundException x) {
+                        saveAction.open(chooser.getSelectedFile());
+                    } catch (IOException x) {
                         JOptionPane.showMessageDialog(
                                 null,
                                 "Error: " + x.getMessage(),
@@ -136,9 +135,8 @@ public class MainWindow extends JFrame {
                                 JOptionPane.ERROR_MESSAGE
                         );
                     }
-                    // Set budget and update
-                    infoPanel.setBudgetField(budgetHandler.getBudget());
-                    budgetHandler.update();
+                    // Set budget
+                    infoPanel.setBudgetField(budgetHandler.getBudgetAmount());
                     tabbedPane.updateTables();
                 } // Else cancel
             } // Else NO_OPTION
@@ -167,14 +165,16 @@ public class MainWindow extends JFrame {
                             "0"
                     )
             );
-            budgetHandler.update();
         });
 
         /* Add to container */
         this.setLayout(new BorderLayout());
         this.add(infoPanel, BorderLayout.NORTH);
         this.add(tabbedPane, BorderLayout.CENTER);
-        this.add(addPanel, BorderLayout.SOUTH);
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(addPanel, BorderLayout.CENTER);
+        southPanel.add(statusLabel, BorderLayout.WEST);
+        this.add(southPanel, BorderLayout.SOUTH);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,246 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money, kept as a whole number of cents so that sums are
+ * exact.
+ * <p>
+ * Money is immutable. Code that adds up many amounts should use the cents
+ * directly (see <code>getCents()</code>) rather than create a Money for every
+ * value.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Characters needed to format any amount, see <code>getChars()</code>.
+     */
+    static final int MAX_CHARS = 24;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    /**
+     * Get the Money of an amount of cents.
+     * @param cents Amount in cents.
+     * @return The Money.
+     */
+    public static Money ofCents(long cents) {
+        return (cents == 0) ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Get the Money closest to an amount, rounded half up to whole cents.
+     * @param amount Amount, such as -12.5.
+     * @return The Money.
+     * @throws NumberFormatException If amount is not finite or out of range.
+     */
+    public static Money valueOf(double amount) throws NumberFormatException {
+        // BigDecimal.valueOf() goes through Double.toString(), so 0.29 is
+        // 29 cents and not 28.999...
+        return ofCents(round(BigDecimal.valueOf(amount), amount));
+    }
+
+    /**
+     * Parse a money String.
+     * @param money Money String, such as "-12.5".
+     * @return The Money.
+     * @throws NumberFormatException If money is not a number.
+     */
+    public static Money parse(String money) throws NumberFormatException {
+        return ofCents(parseCents(money));
+    }
+
+    /**
+     * Parse a money String to an amount of cents. Plain amounts with at most
+     * two decimals, which is what every save holds, are read without
+     * creating any object.
+     * @param money Money String, such as "-12.5".
+     * @return Amount in cents, rounded half up.
+     * @throws NumberFormatException If money is not a number.
+     * @throws NullPointerException If money is null.
+     */
+    public static long parseCents(String money) throws NumberFormatException {
+        int start = 0;
+        int end = money.length();
+        while (start < end && money.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && money.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (money.charAt(i) == '-' || money.charAt(i) == '+')) {
+            negative = money.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        while (i < end && isDigit(money.charAt(i)) && digits < 16) {
+            units = units * 10 + (money.charAt(i++) - '0');
+            digits++;
+        }
+        long fraction = 0;
+        int decimals = 0;
+        if (i < end && money.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(money.charAt(i)) && decimals < 2) {
+                fraction = fraction * 10 + (money.charAt(i++) - '0');
+                decimals++;
+            }
+        }
+        if (i != end || digits + decimals == 0) {
+            // Long, rounded or unusual (exponent) amounts, or not a number
+            return parseSlow(money.substring(start, end));
+        }
+        long cents = units * 100 +
+                ((decimals == 1) ? fraction * 10 : fraction);
+        return negative ? -cents : cents;
+    }
+
+    private static long parseSlow(String money) throws NumberFormatException {
+        return round(new BigDecimal(money), money);
+    }
+
+    private static long round(BigDecimal amount, Object original)
+            throws NumberFormatException {
+        try {
+            return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP)
+                    .longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " +
+                    original);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Format an amount of cents.
+     * @param cents Amount in cents.
+     * @return Money String with two decimal places, such as "-12.50".
+     */
+    public static String format(long cents) {
+        char[] buf = new char[MAX_CHARS];
+        int start = getChars(cents, buf);
+        return new String(buf, start, buf.length - start);
+    }
+
+    /**
+     * Format an amount of cents into the end of a char array, as
+     * <code>format()</code> does.
+     * @param cents Amount in cents.
+     * @param buf Array of at least <code>MAX_CHARS</code> characters.
+     * @return Index of the first character written; the amount ends at the
+     * end of buf.
+     */
+    static int getChars(long cents, char[] buf) {
+        int position = buf.length;
+        // Division and remainder keep the sign, so Long.MIN_VALUE works too
+        long units = Math.abs(cents / 100);
+        int fraction = (int) Math.abs(cents % 100);
+        buf[--position] = (char) ('0' + fraction % 10);
+        buf[--position] = (char) ('0' + fraction / 10);
+        buf[--position] = '.';
+        do {
+            buf[--position] = (char) ('0' + units % 10);
+            units /= 10;
+        } while (units != 0);
+        if (cents < 0) {
+            buf[--position] = '-';
+        }
+        return position;
+    }
+
+    /**
+     * Get the amount in cents.
+     * @return Amount in cents.
+     */
+    public long getCents() {
+        return cents;
+    }
+
+    /**
+     * Get the amount as a double, for charts and other displays.
+     * @return Amount, such as -12.5.
+     */
+    public double toDouble() {
+        return cents / 100d;
+    }
+
+    /**
+     * Add an amount.
+     * @param other Amount to add.
+     * @return The sum.
+     * @throws ArithmeticException If the sum is out of range.
+     */
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    /**
+     * Subtract an amount.
+     * @param other Amount to subtract.
+     * @return The difference.
+     * @throws ArithmeticException If the difference is out of range.
+     */
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    /**
+     * Get the negated amount.
+     * @return -this.
+     */
+    public Money negate() {
+        return ofCents(-cents);
+    }
+
+    /**
+     * Get the absolute amount.
+     * @return |this|.
+     */
+    public Money abs() {
+        return (cents < 0) ? negate() : this;
+    }
+
+    /**
+     * Get the sign of the amount.
+     * @return -1, 0 or 1.
+     */
+    public int signum() {
+        return Long.signum(cents);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * Format the amount.
+     * @return Money String with two decimal places, such as "-12.50".
+     */
+    @Override
+    public String toString() {
+        return format(cents);
+    }
+
+}
@@ -49,6 +49,23 @@ public class NumberTextField extends JTextField {
         setText(String.format(numberFormat, number));
     }
 
+    /**
+     * Get the value of the text field as an exact amount of money.
+     * @return Money in the text field, rounded half up to whole cents.
+     * @throws NumberFormatException If text does not have a readable number.
+     */
+    public Money getMoney() throws NumberFormatException {
+        return Money.parse(getText().trim().replaceAll(REGEX, ""));
+    }
+
+    /**
+     * Set the text to the given amount of money, with two decimal places.
+     * @param money Money to set text.
+     */
+    public void setMoney(Money money) {
+        setText(money.toString());
+    }
+
     /**
      * Remove all non-numerical (excluding '+', '-', and '.') characters from
      * the text field.
@@ -3,7 +3,6 @@ import javax.swing.*;
 import org.jfree.chart.*;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.general.DefaultPieDataset;
-import org.jfree.data.xy.DefaultXYDataset;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
@@ -12,7 +11,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The options tab. Displays visual representation of the budgetHandler and allows
@@ -34,7 +38,15 @@ public class OverviewTab extends Tab {
      * The JPanel that will be inside the scroll pane
      */
     private JPanel internalPanel;
+    private BudgetHandler budgetHandler;
     private JFreeChart chart; // Data
+    /**
+     * The charts and their datasets are created once and changed in place,
+     * so the plot, renderer and legend keep their state.
+     */
+    private final DefaultPieDataset pieDataset = new DefaultPieDataset();
+    private final XYSeriesCollection xyDataset = new XYSeriesCollection();
+    private JFreeChart pieChart, xyChart;
     private ChartPanel chartPanel; // Display
     // Char type, expense type, category
     private JComboBox<String> chartBox, expTypeBox, catBox;
@@ -42,6 +54,36 @@ public class OverviewTab extends Tab {
      * The title of the chart.
      */
     private String title = "";
+    /**
+     * Computes the values of the charts from snapshots, one at a time, so
+     * the event thread only has to show them.
+     */
+    private final ExecutorService worker =
+            Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Overview charts");
+                t.setDaemon(true);
+                return t;
+            });
+    /**
+     * The computation last requested, cancelled if a newer one comes first.
+     */
+    private Future<?> pending;
+    /**
+     * Counts the computations requested. Only the values of the latest one
+     * are shown; older ones are dropped when they finish.
+     */
+    private volatile long generation = 0;
+    /**
+     * True if the budget changed while the tab was not selected, so the
+     * chart has to be updated when it is.
+     */
+    private boolean stale = true;
+    /**
+     * The values last computed for every mode (see <code>getMode()</code>),
+     * with the budget version they were computed from. Only used on the
+     * event thread.
+     */
+    private final Map<String, ChartData> computed = new HashMap<>();
 
     private OverviewTab() { }
 
@@ -67,6 +109,7 @@ public class OverviewTab extends Tab {
     }
 
     private void init(BudgetHandler budgetHandler) {
+        this.budgetHandler = budgetHandler;
         internalPanel = new JPanel();
         internalPanel.setLayout(new BoxLayout(internalPanel,
                 BoxLayout.PAGE_AXIS));
@@ -95,13 +138,29 @@ public class OverviewTab extends Tab {
         budgetHandler.getCategories().addTypesChangeListener(() -> {
             updateTypes(budgetHandler.getCategories().toArray());
         });
-        budgetHandler.addBudgetEventListener(() -> {
-            update(budgetHandler);
+        budgetHandler.addBudgetChangeListener(events -> {
+            if (affectsCharts(events)) {
+                update(budgetHandler);
+            }
         });
 
 
-        chart = ChartFactory.createPieChart("Start budgeting for visual",
-                new DefaultPieDataset());
+        pieChart = ChartFactory.createPieChart("Start budgeting for visual",
+                pieDataset,
+                true, // legend
+                true, // tooltips
+                false); // urls
+        xyChart = ChartFactory.createXYLineChart(
+                title, // title
+                "Day of Month", // x axis
+                "Spent", // y axis
+                xyDataset, // data
+                PlotOrientation.VERTICAL, // orientation
+                true, // legend
+                true, // tooltips
+                false // urls
+        );
+        chart = pieChart;
         chartPanel = new ChartPanel(chart,
                 true, // properties
                 true, // save
@@ -118,11 +177,37 @@ public class OverviewTab extends Tab {
         internalPanel.add(catBox);
     }
 
+    /**
+     * Set if the tab is shown. A tab that was not shown when the budget
+     * changed updates its chart when it is shown again.
+     * @param selected True if the tab is shown.
+     */
+    @Override
+    public void setSelected(boolean selected) {
+        super.setSelected(selected);
+        if (selected && stale) {
+            update(budgetHandler);
+        }
+    }
+
+    /**
+     * Get the budget version the chart of the current mode was last
+     * computed from. The chart is up to date if this is the version of the
+     * BudgetHandler, see <code>BudgetHandler.getVersion()</code>.
+     * @return The version, or -1 if the mode has not been computed.
+     */
+    public long getVersion() {
+        ChartData data = computed.get(getMode());
+        return (data == null) ? -1 : data.version;
+    }
+
     /**
      * Update the typesBox ComboBoxModel.
      * @param categories Category list to use.
      */
     private void updateTypes(String[] categories) {
+        // Categories that are gone would stay in the modes
+        computed.clear();
         catBox.setModel(new DefaultComboBoxModel<>(categories));
         // Add required items
         catBox.addItem("((No types; Spending))");
@@ -132,251 +217,327 @@ public class OverviewTab extends Tab {
     }
 
     /**
-     * Generate the proper pie chart.
-     * @return The pie chart.
+     * Apply values computed by <code>computePie()</code> to the pie dataset.
+     * Only the sections that changed are set, and the chart is notified once,
+     * if anything changed.
+     * @param data Values of the chart.
      */
-    private JFreeChart generatePieChart(BudgetHandler budgetHandler) {
-        DefaultPieDataset set = new DefaultPieDataset();
-        // Cannot show specific (category) type, but can show expense types
-        switch (expTypeBox.getSelectedIndex()) {
-            case 0: // Both
-                setPieDataset(
-                        budgetHandler,
-                        set,
-                        budgetHandler.getExpenseByCategory()
-                );
-                break;
-            default: // Fixed or Variable
-                setPieDataset(
-                        budgetHandler,
-                        set,
-                        budgetHandler.getExpenseByCategory(
-                            BudgetHandler.Which.get(
-                                    expTypeBox.getSelectedIndex() - 1))
-                );
-                break;
+    private void updatePie(ChartData data) {
+        List<String> keys = new ArrayList<>(data.values.keySet());
+        if (pieDataset.getKeys().equals(keys)) {
+            boolean same = true;
+            int i = 0;
+            for (double[] value : data.values.values()) {
+                same &= pieDataset.getValue(i++).doubleValue() == value[0];
+            }
+            if (same) {
+                return;
+            }
         }
-        return ChartFactory.createPieChart(title, set,
-                true, // legend
-                true, // tooltips
-                false); // urls
+        pieDataset.setNotify(false);
+        for (Object key : pieDataset.getKeys()) {
+            if (!data.values.containsKey(key)) {
+                pieDataset.remove((Comparable) key);
+            }
+        }
+        int i = 0;
+        for (Map.Entry<String, double[]> entry : data.values.entrySet()) {
+            double value = entry.getValue()[0];
+            if (pieDataset.getIndex(entry.getKey()) != i) {
+                // Moves the section if it exists
+                pieDataset.insertValue(i, entry.getKey(), value);
+            } else if (pieDataset.getValue(i).doubleValue() != value) {
+                pieDataset.setValue(entry.getKey(), value);
+            }
+            i++;
+        }
+        pieDataset.setNotify(true);
     }
 
     /**
-     * Set/add the contents of a map into a Pie dataset. Will add contents if
-     * map contains keys that the dataset does not have.
-     * @param budgetHandler BudgetHandler to retrieve information from.
-     * @param set DefaultPieDataset to modify.
-     * @param m Map of values to set contents to.
+     * Compute the sections of the pie chart: the money spent by category
+     * and the remaining budget. Can run on any thread.
+     * @param snapshot Snapshot to read.
+     * @param which Which BudgetList, or null for both.
+     * @return Value of every section, in an array of one.
      */
-    private void setPieDataset(BudgetHandler budgetHandler,
-            DefaultPieDataset set, Map<String, Double> m) {
-        for (Map.Entry<String, Double> entry : m.entrySet()) {
+    private static ChartData computePie(BudgetSnapshot snapshot,
+                                        BudgetHandler.Which which) {
+        // Cannot show specific (category) type, but can show expense types
+        ChartData data = new ChartData(true, snapshot.getVersion());
+        for (Map.Entry<String, Double> entry
+                : snapshot.getExpenseByCategory(which).entrySet()) {
             if (entry.getValue() < 0) {
-                set.setValue(entry.getKey(), Math.abs(entry.getValue()));
+                data.values.put(entry.getKey(),
+                        new double[]{Math.abs(entry.getValue())});
             }
         }
-        set.setValue("Remaining",
-                new Double(budgetHandler.getRemainingBudget()));
+        data.values.put("Remaining",
+                new double[]{snapshot.getRemainingAmount().toDouble()});
+        return data;
     }
 
     /**
-     * Add HashMap values.
-     * @param m List of HashMaps.
-     * @return Sum of all maps.
+     * Check if budget changes can change a chart. Renaming rows cannot, so
+     * editing names does not redraw the chart.
+     * @param events Changes to check.
+     * @return True if any change is not a change of names.
      */
-    private HashMap<Integer, Double> addMaps(HashMap<Integer, Double>... m) {
-        if (m == null) {
-            throw new NullPointerException();
-        }
-        HashMap<Integer, Double> result = new HashMap<>(m[0].size());
-        for (HashMap<Integer, Double> map : m) {
-            for (Integer i = 0; i < map.size(); i++) {
-                result.compute(i, (key, value) -> {
-                    if (result.get(key) == null) {
-                        return (value == null) ? 0d : value;
-                    }
-                    return result.get(key) + value;
-                });
+    private static boolean affectsCharts(List<BudgetEvent> events) {
+        for (BudgetEvent e : events) {
+            if (e.getType() != BudgetEvent.Type.ROWS_UPDATED ||
+                    e.getColumn() != BudgetList.NAME) {
+                return true;
             }
         }
-
-        // Finalize all values
-        //finalizeMap(result);
-        return result;
+        return false;
     }
 
     /**
-     * Finalize all values of a map properly.
-     * @param result HashMap to modify.
+     * Get the money spent on every day of the month. Days where money was
+     * gained show 0: that is not SPENT money!
+     * @param days Totals in cents, indexed by day.
+     * @return Money spent, indexed by day - 1.
      */
-    private void finalizeMap(HashMap<Integer, Double> result) {
-        result.forEach((key, val) ->
-                result.compute(key, (k, v) -> {
-                    // If gained, show as 0: that is not SPENT money!
-                    // TODO: Add 'show gained' feature or something similar
-                    if (v.doubleValue() >= 0) {
-                        return 0d;
-                    }
-                    // Make each value positive
-                    return Math.abs(v.doubleValue());
-                })
-        );
+    private static double[] toSpending(long[] days) {
+        // TODO: Add 'show gained' feature or something similar
+        int maxDays = Math.min(FormattedDate.getMaxMonthDays(),
+                days.length - 1);
+        double[] spent = new double[maxDays];
+        for (int day = 1; day <= maxDays; day++) {
+            spent[day - 1] = (days[day] >= 0) ? 0d : -days[day] / 100d;
+        }
+        return spent;
     }
 
     /**
-     * Create an XYSeries object from the values of a given HashMap.
-     * @param map HashMap to use.
-     * @param name Name of the series.
-     * @return XYSeries containing the HashMap values.
+     * Apply values computed by <code>computeXY()</code> to the XY dataset.
+     * Series that are still shown keep their place (and color) and only the
+     * days that changed are set. The chart is notified once, if anything
+     * changed.
+     * @param data Values of the chart.
      */
-    private XYSeries mapToSeries(HashMap<Integer, Double> map, String name) {
-        // Finalize all values
-        finalizeMap(map);
-
-        final XYSeries xy = new XYSeries(name);
-        for (Map.Entry<Integer, Double> entry : map.entrySet()) {
-            xy.add(entry.getKey(), entry.getValue());
+    private void updateXY(ChartData data) {
+        if (isShowing(data)) {
+            return;
+        }
+        xyDataset.setNotify(false);
+        for (int s = xyDataset.getSeriesCount() - 1; s >= 0; s--) {
+            if (!data.values.containsKey(xyDataset.getSeriesKey(s))) {
+                xyDataset.removeSeries(s);
+            }
         }
-        return xy;
+        int s = 0;
+        for (Map.Entry<String, double[]> entry : data.values.entrySet()) {
+            double[] spent = entry.getValue();
+            if (s < xyDataset.getSeriesCount() &&
+                    !entry.getKey().equals(xyDataset.getSeriesKey(s))) {
+                // Out of order: the series from here on are added again
+                while (xyDataset.getSeriesCount() > s) {
+                    xyDataset.removeSeries(s);
+                }
+            }
+            if (s == xyDataset.getSeriesCount()) {
+                xyDataset.addSeries(new XYSeries(entry.getKey()));
+            }
+            XYSeries xy = xyDataset.getSeries(s++);
+            if (xy.getItemCount() != spent.length) {
+                xy.clear();
+                for (int i = 0; i < spent.length; i++) {
+                    xy.add(i + 1, spent[i]);
+                }
+            } else {
+                for (int i = 0; i < spent.length; i++) {
+                    if (xy.getY(i).doubleValue() != spent[i]) {
+                        xy.updateByIndex(i, spent[i]);
+                    }
+                }
+            }
+        }
+        xyDataset.setNotify(true);
     }
 
     /**
-     * Generate the appropriate XY chart.
-     * @param budgetHandler BudgetHandler to use.
-     * @return The XY chart.
+     * Check if the XY dataset already shows the values of a chart.
+     * @param data Values of the chart.
+     * @return True if the series and all their days are the same.
      */
-    private JFreeChart generateXYChart(BudgetHandler budgetHandler) {
-        DefaultXYDataset set = new DefaultXYDataset();
-        // Generate series:
-        ArrayList<XYSeries> seriesList;
-        // All types: show all individual type plots
-        if (catBox.getSelectedIndex() == catBox.getItemCount() - 1) {
-            seriesList = new ArrayList<>(catBox.getItemCount() - 2);
-
-            // Iterate through all the types (excluding last 2 non-type items)
-            for (int i = 0; i < catBox.getItemCount() - 2; i++) {
-                String currentItem = catBox.getItemAt(i);
-
-                final XYSeries series = new XYSeries(catBox.getItemAt(i));
-                HashMap<Integer, Double> datedMap =
-                        (expTypeBox.getSelectedIndex() == 0) ?
-                        // If 0, add both dated expenses
-                        addMaps(
-                                budgetHandler.getDatedExpenses(
-                                        currentItem,
-                                        BudgetHandler.Which.FIXED
-                                ),
-                                budgetHandler.getDatedExpenses(
-                                        currentItem,
-                                        BudgetHandler.Which.VARIABLE
-                                )
-                        )
-                        : // OR != 0
-                        budgetHandler.getDatedExpenses(
-                                currentItem,
-                                BudgetHandler.Which.get(
-                                        expTypeBox.getSelectedIndex() - 1)
-                        );
-
-                // Add the map to the series
-                if (datedMap != null) {
-                    datedMap.forEach((k, v) -> {
-                        series.add(k, v);
-                    });
-                }
-                // Add the series to the list
-                seriesList.add(series);
+    private boolean isShowing(ChartData data) {
+        if (xyDataset.getSeriesCount() != data.values.size()) {
+            return false;
+        }
+        int s = 0;
+        for (Map.Entry<String, double[]> entry : data.values.entrySet()) {
+            XYSeries xy = xyDataset.getSeries(s++);
+            double[] spent = entry.getValue();
+            if (!entry.getKey().equals(xy.getKey()) ||
+                    xy.getItemCount() != spent.length) {
+                return false;
             }
-        } else if (catBox.getSelectedIndex() == catBox.getItemCount() - 2) {
-            // Show: no specific category; just overall daily spending
-            seriesList = new ArrayList<>(1);
-            // Accumulate spending of all categories and types of every day
-            HashMap<Integer, Double> sum =
-                    new HashMap<>(FormattedDate.getDay());
-            for (int t = 0; t < catBox.getItemCount() - 2; t++) {
-                if (expTypeBox.getSelectedIndex() != 0) { // Fixed or variable
-                    // Put sum of 'sum' and the dated expenses of a category
-                    sum.putAll(addMaps(
-                            sum,
-                            budgetHandler.getDatedExpenses(
-                            catBox.getItemAt(t),
-                            BudgetHandler.Which.get(
-                                    expTypeBox.getSelectedIndex() - 1))
-                    ));
-                } else { // Both is selected as expense type to show
-                    String category = catBox.getItemAt(t);
-                    sum.putAll(addMaps(
-                            sum,
-                            budgetHandler.getDatedExpenses(
-                                    category,
-                                    BudgetHandler.Which.FIXED
-                            ),
-                            budgetHandler.getDatedExpenses(
-                                    category,
-                                    BudgetHandler.Which.VARIABLE
-                            )
-                    ));
+            for (int i = 0; i < spent.length; i++) {
+                if (xy.getY(i).doubleValue() != spent[i]) {
+                    return false;
                 }
             }
+        }
+        return true;
+    }
 
-            // Put all info into series
-            seriesList.add(mapToSeries(sum, "Total Spending"));
-        } else { // Show an individual plot of a chosen category
-            seriesList = new ArrayList<>(1);
-            String cat = catBox.getItemAt(catBox.getSelectedIndex());
-            seriesList.add(mapToSeries(
-                    (expTypeBox.getSelectedIndex() == 0) ?
-                            // Selected index = both
-                    addMaps(
-                            budgetHandler.getDatedExpenses(
-                                    cat,
-                                    BudgetHandler.Which.FIXED
-                            ),
-                            budgetHandler.getDatedExpenses(
-                                    cat,
-                                    BudgetHandler.Which.VARIABLE
-                            )
-                    )
-                            : // OR if != 0
-                    budgetHandler.getDatedExpenses(
-                            cat,
-                            BudgetHandler.Which.get(
-                                    expTypeBox.getSelectedIndex() - 1
-                            )
-                    ),
-                    cat // Name
-            ));
+    /**
+     * Compute the series of the XY chart. Every series is read from the
+     * totals by category and day of the snapshot, so no row is read. Can run
+     * on any thread.
+     * @param snapshot Snapshot to read.
+     * @param which Which BudgetList, or null for both.
+     * @param categories Category of every series, or null for a single
+     *                   series of the overall spending.
+     * @return Money spent on every day, by series.
+     */
+    private static ChartData computeXY(BudgetSnapshot snapshot,
+                                       BudgetHandler.Which which,
+                                       String[] categories) {
+        ChartData data = new ChartData(false, snapshot.getVersion());
+        if (categories == null) {
+            // Show: no specific category; just overall daily spending
+            data.values.put("Total Spending",
+                    toSpending(snapshot.getTotalByDay(-1, which)));
+            return data;
         }
-        // Add all series to collection
-        final XYSeriesCollection collection = new XYSeriesCollection();
-        seriesList.forEach(xySeries-> collection.addSeries(xySeries));
-        return ChartFactory.createXYLineChart(
-                title, // title
-                "Day of Month", // x axis
-                "Spent", // y axis
-                collection, // data
-                PlotOrientation.VERTICAL, // orientation
-                true, // legend
-                true, // tooltips
-                false // urls
-        );
+        for (String category : categories) {
+            int id = snapshot.findCategoryId(category);
+            data.values.put(category, toSpending((id < 0)
+                    ? new long[BudgetList.DAYS]
+                    : snapshot.getTotalByDay(id, which)));
+        }
+        return data;
+    }
+
+    /**
+     * Get the categories to show in the XY chart.
+     * @return Selected category, every category if "All types" is selected,
+     * or null if "No types" is selected.
+     */
+    private String[] getSelectedCategories() {
+        int selected = catBox.getSelectedIndex();
+        if (selected == catBox.getItemCount() - 2) {
+            return null;
+        }
+        if (selected != catBox.getItemCount() - 1) {
+            return new String[]{catBox.getItemAt(selected)};
+        }
+        // All types: iterate through all of them (excluding last 2 items)
+        String[] categories = new String[catBox.getItemCount() - 2];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = catBox.getItemAt(i);
+        }
+        return categories;
+    }
+
+    /**
+     * Get the key of the chart selected by the combo boxes.
+     * @return Chart type, expense type and, for XY charts, category.
+     */
+    private String getMode() {
+        String mode = chartBox.getSelectedIndex() + "/" +
+                expTypeBox.getSelectedIndex();
+        return (chartBox.getSelectedIndex() == 0) ? mode
+                : mode + "/" + catBox.getSelectedIndex();
     }
 
     /**
-     * Update the chart.
+     * Update the chart. While the tab is not selected, the chart is only
+     * marked to be updated when it is.
+     * <p>
+     * The values are computed in the background from a snapshot of the
+     * budget and shown on the event thread when they are ready, unless a
+     * newer update was requested in the meantime. Values already computed
+     * for the mode and version are shown right away. Must be called on the
+     * event thread.
      * @param budgetHandler BudgetHandler to use.
      */
     public void update(BudgetHandler budgetHandler) {
-        if (chartBox.getSelectedIndex() == 0) { // Pie
-            chart = generatePieChart(budgetHandler);
-        } else { // 1, XY
-            chart = generateXYChart(budgetHandler);
+        if (!isSelected()) {
+            stale = true;
+            return;
+        }
+        stale = false;
+        // Only totals are needed, so paged rows are never read
+        BudgetSnapshot snapshot = budgetHandler.snapshotTotals();
+        String mode = getMode();
+        long request = ++generation;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        ChartData cached = computed.get(mode);
+        if (cached != null && cached.version == snapshot.getVersion()) {
+            show(cached);
+            return;
         }
-        chart.setTitle("Expenses: " +
+        boolean pie = chartBox.getSelectedIndex() == 0;
+        // Expense type: null is both lists
+        BudgetHandler.Which which = (expTypeBox.getSelectedIndex() == 0)
+                ? null
+                : BudgetHandler.Which.get(expTypeBox.getSelectedIndex() - 1);
+        String[] categories = pie ? null : getSelectedCategories();
+        pending = worker.submit(() -> {
+            if (request != generation) {
+                return; // Already out of date
+            }
+            ChartData data = pie ? computePie(snapshot, which)
+                    : computeXY(snapshot, which, categories);
+            SwingUtilities.invokeLater(() -> {
+                computed.put(mode, data);
+                if (request == generation) {
+                    show(data);
+                }
+            });
+        });
+    }
+
+    /**
+     * Show computed values in the chart of their kind. The chart panel is
+     * only given another chart when the kind of chart changes.
+     * @param data Values of the chart.
+     */
+    private void show(ChartData data) {
+        JFreeChart shown = data.pie ? pieChart : xyChart;
+        String text = "Expenses: " +
                 FormattedDate.getMonthName(FormattedDate.getMonth()) +
-                " " + FormattedDate.getYear());
-        chartPanel.setChart(chart);
+                " " + FormattedDate.getYear();
+        if (!text.equals(shown.getTitle().getText())) {
+            shown.setTitle(text);
+        }
+        if (data.pie) {
+            updatePie(data);
+        } else {
+            updateXY(data);
+        }
+        if (chart != shown) {
+            chart = shown;
+            chartPanel.setChart(chart);
+        }
+    }
+
+    /**
+     * Values of a chart, computed from a snapshot. Not modified once it is
+     * handed to the event thread.
+     */
+    private static final class ChartData {
+
+        final boolean pie;
+        /**
+         * Version of the budget the values were computed from.
+         */
+        final long version;
+        /**
+         * Pie: value of every section. XY: spending of every day, by series.
+         */
+        final Map<String, double[]> values = new LinkedHashMap<>();
+
+        ChartData(boolean pie, long version) {
+            this.pie = pie;
+            this.version = version;
+        }
     }
 
 }
@@ -0,0 +1,359 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import static java.util.logging.Logger.getAnonymousLogger;
+
+/**
+ * The rows of one BudgetList that are still in a binary (v2) save file. See
+ * <code>BinarySave.open()</code>.
+ * <p>
+ * Rows are read a page at a time when they are asked for, and only the
+ * last <code>MAX_PAGES</code> pages used are kept. The totals of the list
+ * come from the totals section of the save, so they are known without
+ * reading any row.
+ * <p>
+ * The file is read through a channel rather than mapped, so the save can
+ * still be replaced while its rows are paged.
+ */
+final class PagedRows implements Closeable {
+
+    /**
+     * Rows in a page.
+     */
+    static final int PAGE_ROWS = 256;
+    /**
+     * Pages kept in memory.
+     */
+    static final int MAX_PAGES = 8;
+
+    private final File file;
+    private final long section;
+    private final FileChannel channel;
+    private final int count;
+    // Positions of the columns in the file
+    private final long dates;
+    private final long categories;
+    private final long offsets;
+    private final long amounts;
+    private final long names;
+    private final String[] dictionary;
+    /**
+     * Cents by category id and day.
+     */
+    private final long[][] totals;
+
+    private final HashMap<Integer, String> dateStrings = new HashMap<>(64);
+    private final LinkedHashMap<Integer, Object[][]> pages =
+            new LinkedHashMap<Integer, Object[][]>(MAX_PAGES * 2, 0.75f,
+                    true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Integer, Object[][]> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            };
+
+    /**
+     * Open the rows of a list section.
+     * @param f Save file.
+     * @param section Position of the list section in the file.
+     * @param dictionary Category dictionary of the save.
+     * @param totals Totals by category id and day from the totals section,
+     *               or null to add them up from the rows.
+     * @throws IOException If the file cannot be read or the section is not
+     * valid.
+     */
+    PagedRows(File f, long section, String[] dictionary, long[][] totals)
+            throws IOException {
+        file = f;
+        this.section = section;
+        channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer head = BinarySave.read(channel, section, 4 + 4 + 8);
+            head.getInt(); // which
+            count = head.getInt();
+            head.getLong(); // total, also in the totals section
+            dates = section + head.capacity();
+            categories = dates + count * 4L;
+            offsets = categories + count * 4L;
+            amounts = offsets + (count + 1) * 4L;
+            names = amounts + count * 8L;
+            if (count < 0 || names > channel.size()) {
+                throw new IOException("Corrupt list section.");
+            }
+            this.dictionary = dictionary;
+            this.totals = (totals != null) ? totals : addTotals();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open the same rows again, through a channel of their own, so they can
+     * be closed independently.
+     * @return New PagedRows of the same rows.
+     * @throws IOException If the file cannot be read.
+     */
+    PagedRows reopen() throws IOException {
+        return new PagedRows(file, section, dictionary, totals);
+    }
+
+    /**
+     * Add up the totals from the date, category and amount columns, for
+     * saves written without a totals section.
+     */
+    private long[][] addTotals() throws IOException {
+        long[][] cube = new long[dictionary.length][BudgetList.DAYS];
+        ByteBuffer d = BinarySave.read(channel, dates, count * 4);
+        ByteBuffer c = BinarySave.read(channel, categories, count * 4);
+        ByteBuffer a = BinarySave.read(channel, amounts, count * 8);
+        for (int r = 0; r < count; r++) {
+            int day = d.getInt() & 0xFF;
+            int id = c.getInt();
+            long cents = a.getLong();
+            if (id >= 0 && id < cube.length) {
+                cube[id][day < BudgetList.DAYS ? day : 0] += cents;
+            }
+        }
+        return cube;
+    }
+
+    /**
+     * Get the amount of rows.
+     * @return Row count.
+     */
+    int getRowCount() {
+        return count;
+    }
+
+    /**
+     * Get a value of a row, reading its page if needed.
+     * @param row Index of the row.
+     * @param column Column of the value, as in BudgetList.
+     * @return The value, or null if the page cannot be read.
+     */
+    Object getValueAt(int row, int column) {
+        if (row < 0 || row >= count) {
+            throw new ArrayIndexOutOfBoundsException(row + " >= " + count);
+        }
+        Object[][] page = pages.get(row / PAGE_ROWS);
+        if (page == null) {
+            try {
+                page = readRows(row - row % PAGE_ROWS,
+                        Math.min(PAGE_ROWS, count - row + row % PAGE_ROWS));
+            } catch (IOException e) {
+                getAnonymousLogger().log(Level.WARNING,
+                        "Could not read rows from the save", e);
+                return null;
+            }
+            pages.put(row / PAGE_ROWS, page);
+        }
+        Object[] values = page[row % PAGE_ROWS];
+        return (column < values.length) ? values[column] : null;
+    }
+
+    /**
+     * Read every row, without keeping them as pages.
+     * @return The BudgetRows, in order.
+     * @throws IOException If the file cannot be read.
+     */
+    BudgetRow[] readAll() throws IOException {
+        BudgetRow[] rows = new BudgetRow[count];
+        for (int first = 0; first < count; first += PAGE_ROWS) {
+            Object[][] page = pages.get(first / PAGE_ROWS);
+            if (page == null) {
+                page = readRows(first, Math.min(PAGE_ROWS, count - first));
+            }
+            for (int r = 0; r < page.length; r++) {
+                Object[] values = page[r];
+                rows[first + r] = new BudgetRow((String) values[0],
+                        (String) values[1], (String) values[2],
+                        ((Money) values[3]).getCents());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Visit every row in order through a single RowView, reading the pages
+     * that are not kept without keeping them.
+     * @param categories CategoryList to give the rows the category ids of.
+     * @param action Action to run for every row. The view must not be kept.
+     * @throws IOException If the file cannot be read.
+     */
+    void forEach(CategoryList categories, Consumer<? super RowView> action)
+            throws IOException {
+        forEach(categories, 0, count, action);
+    }
+
+    /**
+     * Visit a range of rows in order through a single RowView.
+     * @param categories CategoryList to give the rows the category ids of.
+     * @param from First row to visit.
+     * @param to Row after the last row to visit.
+     * @param action Action to run for every row. The view must not be kept.
+     * @throws IOException If the file cannot be read.
+     * @throws IndexOutOfBoundsException If the range is out of bounds.
+     */
+    void forEach(CategoryList categories, int from, int to,
+                 Consumer<? super RowView> action) throws IOException {
+        if (from < 0 || to > count || from > to) {
+            throw new IndexOutOfBoundsException(from + " to " + to);
+        }
+        PageCursor cursor = new PageCursor(categories);
+        for (int first = from - from % PAGE_ROWS; first < to;
+             first += PAGE_ROWS) {
+            Object[][] page = pages.get(first / PAGE_ROWS);
+            if (page == null) {
+                page = readRows(first, Math.min(PAGE_ROWS, count - first));
+            }
+            cursor.first = first;
+            for (int r = Math.max(0, from - first);
+                 r < page.length && first + r < to; r++) {
+                cursor.values = page[r];
+                cursor.index = r;
+                action.accept(cursor);
+            }
+        }
+    }
+
+    /**
+     * The RowView of forEach(), reading the values of a page.
+     */
+    private static final class PageCursor implements RowView {
+
+        private final CategoryList categories;
+        private Object[] values;
+        private int first;
+        private int index;
+
+        PageCursor(CategoryList categories) {
+            this.categories = categories;
+        }
+
+        @Override
+        public int getIndex() {
+            return first + index;
+        }
+
+        @Override
+        public int getPackedDate() {
+            return FormattedDate.pack(getDate());
+        }
+
+        @Override
+        public String getDate() {
+            return (String) values[0];
+        }
+
+        @Override
+        public int getDay() {
+            return FormattedDate.unpackDay(getPackedDate());
+        }
+
+        @Override
+        public int getCategoryId() {
+            return categories.getId(getCategory());
+        }
+
+        @Override
+        public String getCategory() {
+            return (String) values[1];
+        }
+
+        @Override
+        public String getName() {
+            return (String) values[2];
+        }
+
+        @Override
+        public long getCents() {
+            return ((Money) values[3]).getCents();
+        }
+    }
+
+    /**
+     * Read the values of a range of rows.
+     */
+    private Object[][] readRows(int first, int n) throws IOException {
+        ByteBuffer d = BinarySave.read(channel, dates + first * 4L, n * 4);
+        ByteBuffer c = BinarySave.read(channel, categories + first * 4L,
+                n * 4);
+        ByteBuffer o = BinarySave.read(channel, offsets + first * 4L,
+                (n + 1) * 4);
+        ByteBuffer a = BinarySave.read(channel, amounts + first * 8L, n * 8);
+        int start = o.getInt(0);
+        int length = o.getInt(n * 4) - start;
+        if (start < 0 || length < 0 || length > channel.size() - names) {
+            throw new IOException("Corrupt name offsets.");
+        }
+        byte[] bytes = BinarySave.read(channel, names + start, length)
+                .array();
+
+        Object[][] values = new Object[n][];
+        for (int r = 0; r < n; r++) {
+            String date = dateStrings.computeIfAbsent(d.getInt(),
+                    FormattedDate::unpack);
+            int id = c.getInt();
+            String cat = (id >= 0 && id < dictionary.length)
+                    ? dictionary[id] : "";
+            int from = o.getInt(r * 4) - start;
+            int to = o.getInt((r + 1) * 4) - start;
+            if (from < 0 || to < from || to > length) {
+                throw new IOException("Corrupt name offsets.");
+            }
+            values[r] = new Object[]{ date, cat,
+                    new String(bytes, from, to - from,
+                            StandardCharsets.UTF_8),
+                    Money.ofCents(a.getLong()) };
+        }
+        return values;
+    }
+
+    /**
+     * Get the sums of the amounts by category and day of the month.
+     * @param categories CategoryList to give the totals the ids of. The
+     *                   categories of the save are added to it if needed.
+     * @return New array of totals in cents, indexed by the ids of categories
+     * and then by day. Day 0 holds the rows without a known date.
+     */
+    long[][] getTotals(CategoryList categories) {
+        int[] ids = new int[Math.min(totals.length, dictionary.length)];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = categories.getId(dictionary[id]);
+        }
+        long[][] cube = new long[categories.getIdCount()][BudgetList.DAYS];
+        for (int id = 0; id < ids.length; id++) {
+            for (int d = 0; d < BudgetList.DAYS; d++) {
+                cube[ids[id]][d] += totals[id][d];
+            }
+        }
+        return cube;
+    }
+
+    /**
+     * Stop reading from the save file.
+     */
+    @Override
+    public void close() {
+        pages.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            getAnonymousLogger().log(Level.WARNING,
+                    "Could not close the save file", e);
+        }
+    }
+
+}
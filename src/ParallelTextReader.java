@@ -0,0 +1,218 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads large text (v1) saves using every core. See SaveFormat.md.
+ * <p>
+ * The row lines of a text save do not depend on each other, so the row
+ * section is split into chunks on line boundaries and the chunks are parsed
+ * at the same time on a ForkJoinPool. Every chunk keeps its rows per
+ * BudgetList, and the chunks are then added to the Loader in file order, so
+ * the result is the same as reading the file line by line.
+ */
+final class ParallelTextReader {
+
+    /**
+     * Files smaller than this are read faster on a single thread.
+     */
+    static final long MIN_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Smallest chunk handed to a task.
+     */
+    private static final int MIN_CHUNK = 1024 * 1024;
+
+    /**
+     * Chunks per thread of the pool, so threads that finish early can take
+     * over work from slower ones.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ParallelTextReader() { }
+
+    /**
+     * Check if a charset can be split on newline bytes, that is, if a
+     * newline is always the single byte <code>'\n'</code>.
+     * @param charset Charset of the save.
+     * @return True if the save can be read in parallel.
+     */
+    static boolean supports(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) ||
+                charset.newEncoder().maxBytesPerChar() == 1;
+    }
+
+    /**
+     * Read a text save on the common ForkJoinPool.
+     * @param f File to read.
+     * @param charset Charset the save was written in.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If a row has the wrong amount of
+     * values, as for a single-threaded read.
+     */
+    static void read(File f, Charset charset, BudgetHandler.Loader loader)
+            throws IOException {
+        read(f, charset, loader, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Read a text save.
+     * @param f File to read.
+     * @param charset Charset the save was written in.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @param pool Pool to parse the rows on.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If a row has the wrong amount of
+     * values, as for a single-threaded read.
+     */
+    static void read(File f, Charset charset, BudgetHandler.Loader loader,
+                     ForkJoinPool pool) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Save file is too large.");
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+
+        // Budget and categories: the first two lines that are not blank
+        int position = 0;
+        int section = 0;
+        while (section < 2 && position < buf.limit()) {
+            int end = lineEnd(buf, position, buf.limit());
+            String line = decode(buf, position, end, charset);
+            position = Math.min(end + 1, buf.limit());
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            section++;
+            if (section == 1) {
+                loader.setBudget(Save.parseBudget(line));
+            } else {
+                loader.setCategories(line.split(BudgetRow.DELIMITER));
+            }
+        }
+
+        // Rows: chunks that start right after a newline
+        int chunks = Math.max(1, Math.min(
+                pool.getParallelism() * CHUNKS_PER_THREAD,
+                (buf.limit() - position) / MIN_CHUNK));
+        int chunkSize = (buf.limit() - position) / chunks + 1;
+        List<Chunk> tasks = new ArrayList<>(chunks);
+        int start = position;
+        while (start < buf.limit()) {
+            int end = (int) Math.min((long) start + chunkSize, buf.limit());
+            if (end < buf.limit()) {
+                end = Math.min(lineEnd(buf, end, buf.limit()) + 1,
+                        buf.limit());
+            }
+            tasks.add(new Chunk(buf, start, end, charset));
+            start = end;
+        }
+
+        for (Chunk chunk : tasks) {
+            pool.execute(chunk);
+        }
+        // Add every chunk as soon as it and the ones before it are done
+        for (Chunk chunk : tasks) {
+            List<List<BudgetRow>> rows = chunk.join();
+            for (BudgetHandler.Which which : BudgetHandler.Which.values()) {
+                loader.addAll(which, rows.get(which.getIndex()));
+            }
+        }
+    }
+
+    /**
+     * Find the end of a line.
+     * @return Index of the newline, or end if there is none before it.
+     */
+    private static int lineEnd(ByteBuffer buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == '\n') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Decode a line, leaving out a trailing carriage return.
+     */
+    private static String decode(ByteBuffer buf, int start, int end,
+                                 Charset charset) {
+        if (end > start && buf.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        ByteBuffer line = buf.duplicate();
+        line.position(start);
+        line.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Parses the row lines in a range of the file.
+     */
+    private static final class Chunk
+            extends RecursiveTask<List<List<BudgetRow>>> {
+
+        private final ByteBuffer buf;
+        private final int start;
+        private final int end;
+        private final Charset charset;
+
+        Chunk(ByteBuffer buf, int start, int end, Charset charset) {
+            this.buf = buf.duplicate();
+            this.start = start;
+            this.end = end;
+            this.charset = charset;
+        }
+
+        @Override
+        protected List<List<BudgetRow>> compute() {
+            byte[] bytes = new byte[end - start];
+            buf.position(start);
+            buf.get(bytes);
+
+            // Roughly 40 bytes per row, shared by the lists
+            List<List<BudgetRow>> rows = new ArrayList<>();
+            for (int i = 0; i < BudgetHandler.Which.values().length; i++) {
+                rows.add(new ArrayList<>(bytes.length / 80 + 1));
+            }
+            int lineStart = 0;
+            while (lineStart < bytes.length) {
+                int lineEnd = lineStart;
+                while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                int length = lineEnd - lineStart;
+                if (length > 0 && bytes[lineEnd - 1] == '\r') {
+                    length--;
+                }
+                String line = new String(bytes, lineStart, length, charset);
+                lineStart = lineEnd + 1;
+
+                BudgetHandler.Which which = Save.getRowList(line);
+                BudgetRow row = (which != null)
+                        ? Save.readRow(line, which) : null;
+                if (row != null) {
+                    rows.get(which.getIndex()).add(row);
+                }
+            }
+            return rows;
+        }
+    }
+
+}
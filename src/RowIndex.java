@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A secondary index of the rows of a BudgetList: for every key, the indexes
+ * of the rows with that key in ascending order. See
+ * <code>BudgetList.setIndexed()</code>.
+ * <p>
+ * Row indexes shift when rows are inserted or removed before them, so an
+ * insert or remove in the middle costs time proportional to the amount of
+ * rows, as it does in the RowStore. Appending a row or changing the key of a
+ * row does not.
+ */
+final class RowIndex<K> {
+
+    private final Map<K, Rows> map;
+
+    private RowIndex(Map<K, Rows> map) {
+        this.map = map;
+    }
+
+    /**
+     * Create an index that can only look up single keys.
+     * @return A new, empty index.
+     */
+    static <K> RowIndex<K> hashed() {
+        return new RowIndex<>(new HashMap<>());
+    }
+
+    /**
+     * Create an index that keeps its keys sorted, so ranges of keys can be
+     * looked up.
+     * @return A new, empty index.
+     */
+    static <K extends Comparable<? super K>> RowIndex<K> sorted() {
+        return new RowIndex<>(new TreeMap<>());
+    }
+
+    /**
+     * Add a row after every row in the index.
+     * @param row Index of the row.
+     * @param key Key of the row.
+     */
+    void add(int row, K key) {
+        map.computeIfAbsent(key, k -> new Rows()).append(row);
+    }
+
+    /**
+     * Insert a row, moving the rows at and after it down by one.
+     * @param row Index of the new row.
+     * @param key Key of the row.
+     */
+    void insert(int row, K key) {
+        for (Rows rows : map.values()) {
+            rows.shift(row, 1);
+        }
+        map.computeIfAbsent(key, k -> new Rows()).insert(row);
+    }
+
+    /**
+     * Change the key of a row.
+     * @param row Index of the row.
+     * @param oldKey Key the row had.
+     * @param newKey Key the row has now.
+     */
+    void change(int row, K oldKey, K newKey) {
+        if (oldKey.equals(newKey)) {
+            return;
+        }
+        Rows rows = map.get(oldKey);
+        if (rows != null && rows.remove(row, row) && rows.size == 0) {
+            map.remove(oldKey);
+        }
+        map.computeIfAbsent(newKey, k -> new Rows()).insert(row);
+    }
+
+    /**
+     * Remove a range of rows, moving the rows after it up.
+     * @param first First row removed.
+     * @param last Last row removed, inclusive.
+     */
+    void remove(int first, int last) {
+        Iterator<Rows> it = map.values().iterator();
+        while (it.hasNext()) {
+            Rows rows = it.next();
+            rows.remove(first, last);
+            if (rows.size == 0) {
+                it.remove();
+            } else {
+                rows.shift(last + 1, first - last - 1);
+            }
+        }
+    }
+
+    /**
+     * Remove every row.
+     */
+    void clear() {
+        map.clear();
+    }
+
+    /**
+     * Get the rows with a key.
+     * @param key Key to look up.
+     * @return New array of row indexes, in ascending order.
+     */
+    int[] get(K key) {
+        Rows rows = map.get(key);
+        return (rows == null) ? new int[0]
+                : Arrays.copyOf(rows.rows, rows.size);
+    }
+
+    /**
+     * Get the rows with a key in a range. Only for sorted indexes.
+     * @param from Lowest key, inclusive.
+     * @param to Highest key, exclusive.
+     * @return New array of row indexes, ordered by key and then by row.
+     * @throws UnsupportedOperationException If the index is not sorted.
+     */
+    int[] get(K from, K to) {
+        if (!(map instanceof NavigableMap)) {
+            throw new UnsupportedOperationException("Index is not sorted.");
+        }
+        Map<K, Rows> range = ((NavigableMap<K, Rows>) map).subMap(from, true,
+                to, false);
+        int count = 0;
+        for (Rows rows : range.values()) {
+            count += rows.size;
+        }
+        int[] result = new int[count];
+        int i = 0;
+        for (Rows rows : range.values()) {
+            System.arraycopy(rows.rows, 0, result, i, rows.size);
+            i += rows.size;
+        }
+        return result;
+    }
+
+    /**
+     * Sorted row indexes of one key.
+     */
+    private static final class Rows {
+
+        private int[] rows = new int[4];
+        private int size = 0;
+
+        void append(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        void insert(int row) {
+            int i = find(row);
+            append(0);
+            System.arraycopy(rows, i, rows, i + 1, size - 1 - i);
+            rows[i] = row;
+        }
+
+        /**
+         * Remove the rows in [first, last].
+         * @return True if any row was removed.
+         */
+        boolean remove(int first, int last) {
+            int from = find(first);
+            int to = find(last + 1);
+            System.arraycopy(rows, to, rows, from, size - to);
+            size -= to - from;
+            return to > from;
+        }
+
+        /**
+         * Add distance to every row at or after a row.
+         */
+        void shift(int from, int distance) {
+            for (int i = find(from); i < size; i++) {
+                rows[i] += distance;
+            }
+        }
+
+        /**
+         * Find the position of the first row at or after a row.
+         */
+        private int find(int row) {
+            int i = Arrays.binarySearch(rows, 0, size, row);
+            return (i < 0) ? -i - 1 : i;
+        }
+    }
+
+}
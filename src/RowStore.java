@@ -0,0 +1,695 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Column storage for the rows of a BudgetList.
+ * <p>
+ * Every value is kept in a primitive array, one array per column: dates are
+ * packed into ints (see <code>FormattedDate.pack()</code>), categories are
+ * ids from a CategoryList, amounts are cents and names are UTF-8 bytes in a
+ * shared arena. A row therefore costs a few dozen bytes and no objects, and
+ * totals are plain loops over the arrays.
+ * <p>
+ * The rows are split into chunks of <code>CHUNK_ROWS</code> rows, each with
+ * its own arrays. <code>freeze()</code> makes a read-only copy that shares
+ * the chunks; a shared chunk is copied the first time it is changed, so a
+ * frozen copy costs one reference per chunk and a change costs at most one
+ * chunk copy.
+ * <p>
+ * Dates that cannot be parsed are kept as text, after the name in the
+ * arena, and amounts that are not numbers are stored as 0.
+ * <p>
+ * A RowStore does not fire any events; BudgetList does that.
+ */
+public final class RowStore {
+
+    private static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    private int size = 0;
+    private Chunk[] chunks = new Chunk[0];
+
+    /**
+     * CategoryList that gives out the category ids, or null if frozen.
+     */
+    private final CategoryList dictionary;
+    /**
+     * Category names by id, only if frozen.
+     */
+    private final String[] categoryNames;
+    /**
+     * Formatted dates by packed date, filled as they are used.
+     */
+    private final String[] dateStrings = new String[13 << 8];
+
+    /**
+     * Create an empty RowStore.
+     * @param dictionary CategoryList that gives out the category ids.
+     */
+    public RowStore(CategoryList dictionary) {
+        this.dictionary = dictionary;
+        this.categoryNames = null;
+    }
+
+    /**
+     * Create a frozen copy of a RowStore, see <code>freeze()</code>.
+     */
+    private RowStore(RowStore rows) {
+        dictionary = null;
+        categoryNames = rows.dictionary.getNames();
+        size = rows.size;
+        chunks = rows.chunks.clone();
+    }
+
+    /**
+     * Get a read-only copy of the rows as they are now. The copy shares its
+     * chunks with this RowStore, which copies a shared chunk before changing
+     * it, so the copy never changes and can be read from any thread.
+     * @return A frozen RowStore. Its rows cannot be changed, and it has no
+     * dictionary.
+     * @throws UnsupportedOperationException If this RowStore is frozen.
+     */
+    public RowStore freeze() {
+        checkWritable();
+        for (Chunk chunk : chunks) {
+            chunk.shared = true;
+        }
+        return new RowStore(this);
+    }
+
+    /**
+     * Check if the RowStore is a frozen copy.
+     * @return True if the rows cannot be changed.
+     */
+    public boolean isFrozen() {
+        return dictionary == null;
+    }
+
+    /**
+     * Get the CategoryList the category ids come from.
+     * @return The CategoryList, null if frozen.
+     */
+    public CategoryList getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the amount of rows.
+     * @return Row count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the packed date of a row.
+     * @param row Index of the row.
+     * @return Packed date, 0 if unknown or <code>FormattedDate.UNPACKED</code>
+     * if kept as text.
+     */
+    public int getDate(int row) {
+        checkIndex(row);
+        return chunk(row).getPackedDate(row & CHUNK_MASK);
+    }
+
+    /**
+     * Get the formatted date of a row.
+     * @param row Index of the row.
+     * @return Formatted date, "" if unknown, or the date as it was set if it
+     * could not be packed.
+     */
+    public String getDateString(int row) {
+        checkIndex(row);
+        return getDateString(chunk(row), row & CHUNK_MASK);
+    }
+
+    private String getDateString(Chunk chunk, int i) {
+        int packed = chunk.dates[i];
+        return (packed < 0) ? chunk.getDateText(i) : formatDate(packed);
+    }
+
+    private String formatDate(int packed) {
+        if (packed >= dateStrings.length) {
+            return FormattedDate.unpack(packed);
+        }
+        String date = dateStrings[packed];
+        if (date == null) {
+            date = FormattedDate.unpack(packed);
+            dateStrings[packed] = date;
+        }
+        return date;
+    }
+
+    /**
+     * Get the day of the month of a row.
+     * @param row Index of the row.
+     * @return Day of the month, 0 if unknown.
+     */
+    public int getDay(int row) {
+        return FormattedDate.unpackDay(getDate(row));
+    }
+
+    /**
+     * Get the category id of a row.
+     * @param row Index of the row.
+     * @return Id of the category in the CategoryList.
+     */
+    public int getCategoryId(int row) {
+        checkIndex(row);
+        return chunk(row).categories[row & CHUNK_MASK];
+    }
+
+    /**
+     * Get the category of a row.
+     * @param row Index of the row.
+     * @return Category name.
+     */
+    public String getCategory(int row) {
+        return getCategoryName(getCategoryId(row));
+    }
+
+    private String getCategoryName(int id) {
+        return (categoryNames != null) ? categoryNames[id]
+                : dictionary.getName(id);
+    }
+
+    /**
+     * Get the amount of a row.
+     * @param row Index of the row.
+     * @return Amount in cents.
+     */
+    public long getCents(int row) {
+        checkIndex(row);
+        return chunk(row).cents[row & CHUNK_MASK];
+    }
+
+    /**
+     * Get the name of a row.
+     * @param row Index of the row.
+     * @return Name.
+     */
+    public String getName(int row) {
+        checkIndex(row);
+        return chunk(row).getName(row & CHUNK_MASK);
+    }
+
+    /**
+     * Get a row as a BudgetRow.
+     * @param row Index of the row.
+     * @return A new BudgetRow.
+     */
+    public BudgetRow getRow(int row) {
+        return new BudgetRow(getDateString(row), getCategory(row),
+                getName(row), getCents(row));
+    }
+
+    /**
+     * Visit every row in order through a single RowView.
+     * @param action Action to run for every row. The view must not be kept.
+     */
+    public void forEach(Consumer<? super RowView> action) {
+        forEach(0, size, action);
+    }
+
+    /**
+     * Visit a range of rows in order through a single RowView.
+     * @param from First row to visit.
+     * @param to Row after the last row to visit.
+     * @param action Action to run for every row. The view must not be kept.
+     * @throws IndexOutOfBoundsException If the range is out of bounds.
+     */
+    public void forEach(int from, int to, Consumer<? super RowView> action) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException(from + " to " + to);
+        }
+        Cursor cursor = new Cursor();
+        for (int r = from; r < to; r++) {
+            cursor.row = r;
+            cursor.chunk = chunk(r);
+            cursor.i = r & CHUNK_MASK;
+            action.accept(cursor);
+        }
+    }
+
+    /**
+     * Get the sum of every amount.
+     * @return Total in cents.
+     */
+    public long getTotal() {
+        long total = 0;
+        for (int r = 0; r < size; r++) {
+            total += chunk(r).cents[r & CHUNK_MASK];
+        }
+        return total;
+    }
+
+    /**
+     * Add a row at the end.
+     * @param row Row to add.
+     */
+    void add(BudgetRow row) {
+        insert(size, row);
+    }
+
+    /**
+     * Insert a row.
+     * @param index Index to insert the row at.
+     * @param row Row to insert.
+     * @throws IndexOutOfBoundsException If index is out of bounds.
+     */
+    void insert(int index, BudgetRow row) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException(index + " > " + size);
+        }
+        ensureCapacity(size + 1);
+        size++;
+        for (int r = size - 1; r > index; r--) {
+            copyRow(r - 1, r);
+        }
+        set(index, row);
+    }
+
+    /**
+     * Replace a row.
+     * @param index Index of the row.
+     * @param row New row.
+     * @throws IndexOutOfBoundsException If index is out of bounds.
+     */
+    void set(int index, BudgetRow row) {
+        setDate(index, row.getDate());
+        setCategory(index, row.getCategory());
+        setName(index, row.getName());
+        setCents(index, row.getCents());
+    }
+
+    /**
+     * Set the date of a row. A date that cannot be packed is kept as text.
+     * @param row Index of the row.
+     * @param date Formatted date.
+     */
+    void setDate(int row, String date) {
+        checkIndex(row);
+        Chunk chunk = writableChunk(row);
+        int i = row & CHUNK_MASK;
+        int packed = FormattedDate.pack(date);
+        if (packed != FormattedDate.UNPACKED) {
+            chunk.dates[i] = packed; // Any old text is left in the arena
+            return;
+        }
+        byte[] bytes = date.getBytes(StandardCharsets.UTF_8);
+        chunk.setText(i, chunk.names, chunk.nameStarts[i], chunk.nameLengths[i],
+                -bytes.length, bytes, 0, rowsIn(row >>> CHUNK_SHIFT));
+    }
+
+    /**
+     * Set the category of a row.
+     * @param row Index of the row.
+     * @param category Category name.
+     */
+    void setCategory(int row, String category) {
+        checkIndex(row);
+        writableChunk(row).categories[row & CHUNK_MASK] =
+                dictionary.getId(category);
+    }
+
+    /**
+     * Set the amount of a row.
+     * @param row Index of the row.
+     * @param amount Amount in cents.
+     */
+    void setCents(int row, long amount) {
+        checkIndex(row);
+        writableChunk(row).cents[row & CHUNK_MASK] = amount;
+    }
+
+    /**
+     * Set the name of a row.
+     * @param row Index of the row.
+     * @param name Name.
+     */
+    void setName(int row, String name) {
+        checkIndex(row);
+        byte[] bytes = String.valueOf(name).getBytes(StandardCharsets.UTF_8);
+        Chunk chunk = writableChunk(row);
+        int i = row & CHUNK_MASK;
+        chunk.setText(i, bytes, 0, bytes.length, chunk.dates[i], chunk.names,
+                chunk.nameStarts[i] + chunk.nameLengths[i],
+                rowsIn(row >>> CHUNK_SHIFT));
+    }
+
+    /**
+     * Remove a range of rows.
+     * @param first First row to remove.
+     * @param last Last row to remove, inclusive.
+     * @throws IndexOutOfBoundsException If the range is out of bounds.
+     */
+    void remove(int first, int last) {
+        if (first < 0 || last >= size || first > last) {
+            throw new IndexOutOfBoundsException(first + " to " + last);
+        }
+        int removed = last - first + 1;
+        for (int r = last + 1; r < size; r++) {
+            copyRow(r, r - removed);
+        }
+        size -= removed;
+        // Drop the chunks no longer used, keeping one to add rows to
+        int used = (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+        if (chunks.length > used + 1) {
+            chunks = Arrays.copyOf(chunks, used + 1);
+        }
+    }
+
+    /**
+     * Move a range of rows.
+     * @param start First row to move.
+     * @param end Last row to move, inclusive.
+     * @param to New index of the first row.
+     * @throws IndexOutOfBoundsException If a row is out of bounds.
+     */
+    void move(int start, int end, int to) {
+        if (start < 0 || end >= size || start > end || to < 0 ||
+                to + end - start >= size) {
+            throw new IndexOutOfBoundsException(start + " to " + end +
+                    " -> " + to);
+        }
+        // Rotate the rows between the old and new place, like
+        // DefaultTableModel.moveRow()
+        int first = Math.min(start, to);
+        int last = Math.max(end, to + end - start);
+        int n = last - first + 1;
+        int distance = to - start;
+        distance = ((distance % n) + n) % n;
+        if (distance == 0) {
+            return;
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[(i + distance) % n] = first + i;
+        }
+        permute(first, order);
+    }
+
+    /**
+     * Reorder the rows.
+     * @param order Old index of every row, in the new order. Must hold every
+     *              index once.
+     * @throws IllegalArgumentException If order has the wrong length.
+     */
+    void permute(int[] order) {
+        if (order.length != size) {
+            throw new IllegalArgumentException(order.length + " != " + size);
+        }
+        permute(0, order);
+    }
+
+    /**
+     * Reorder the rows from a row on.
+     * @param from First row reordered.
+     * @param order Old index of every row in [from, from + order.length),
+     *              in the new order.
+     */
+    private void permute(int from, int[] order) {
+        checkWritable();
+        if (order.length == 0) {
+            return;
+        }
+        // Read from a copy of the old rows, so no row is overwritten before
+        // it is moved
+        RowStore old = new RowStore(dictionary);
+        old.size = size;
+        old.chunks = chunks.clone();
+        int last = (from + order.length - 1) >>> CHUNK_SHIFT;
+        for (int c = from >>> CHUNK_SHIFT; c <= last; c++) {
+            chunks[c].shared = true;
+        }
+        for (int i = 0; i < order.length; i++) {
+            copyRow(old, order[i], from + i);
+        }
+    }
+
+    /**
+     * Remove every row.
+     */
+    void clear() {
+        checkWritable();
+        size = 0;
+        chunks = new Chunk[0];
+    }
+
+    /**
+     * Make room for at least capacity rows.
+     */
+    void ensureCapacity(int capacity) {
+        checkWritable();
+        int needed = (capacity + CHUNK_MASK) >>> CHUNK_SHIFT;
+        if (needed <= chunks.length) {
+            return;
+        }
+        int old = chunks.length;
+        chunks = Arrays.copyOf(chunks, needed);
+        for (int c = old; c < needed; c++) {
+            chunks[c] = new Chunk();
+        }
+    }
+
+    private Chunk chunk(int row) {
+        return chunks[row >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * Get the chunk of a row to change it, copying it first if it is shared.
+     */
+    private Chunk writableChunk(int row) {
+        checkWritable();
+        int c = row >>> CHUNK_SHIFT;
+        if (chunks[c].shared) {
+            chunks[c] = new Chunk(chunks[c], rowsIn(c));
+        }
+        return chunks[c];
+    }
+
+    /**
+     * Get the amount of rows in use in a chunk.
+     */
+    private int rowsIn(int chunk) {
+        return Math.min(CHUNK_ROWS, size - (chunk << CHUNK_SHIFT));
+    }
+
+    /**
+     * Copy a row over another row.
+     */
+    private void copyRow(int from, int to) {
+        copyRow(this, from, to);
+    }
+
+    /**
+     * Copy a row of a RowStore over a row of this one.
+     */
+    private void copyRow(RowStore source, int from, int to) {
+        Chunk src = source.chunk(from);
+        int i = from & CHUNK_MASK;
+        Chunk dst = writableChunk(to);
+        int j = to & CHUNK_MASK;
+        dst.categories[j] = src.categories[i];
+        dst.cents[j] = src.cents[i];
+        if (src == dst) {
+            // Both rows can use the same bytes
+            dst.dates[j] = src.dates[i];
+            dst.nameStarts[j] = src.nameStarts[i];
+            dst.nameLengths[j] = src.nameLengths[i];
+        } else {
+            int end = src.nameStarts[i] + src.nameLengths[i];
+            dst.setText(j, src.names, src.nameStarts[i], src.nameLengths[i],
+                    src.dates[i], src.names, end, rowsIn(to >>> CHUNK_SHIFT));
+        }
+    }
+
+    /**
+     * Up to CHUNK_ROWS rows. A shared chunk belongs to a frozen RowStore and
+     * is never changed.
+     */
+    private static final class Chunk {
+
+        /**
+         * Packed dates. A negative value -n means the date is kept as the n
+         * bytes of text after the name in the arena.
+         */
+        private final int[] dates;
+        private final int[] categories;
+        private final long[] cents;
+        private final int[] nameStarts;
+        private final int[] nameLengths;
+
+        /**
+         * UTF-8 bytes of the names, each followed by the date if it is kept
+         * as text. Replaced and removed names are left in place until the
+         * arena is compacted.
+         */
+        private byte[] names = new byte[CHUNK_ROWS * 8];
+        private int namesLength = 0;
+
+        /**
+         * True once a frozen RowStore uses the chunk.
+         */
+        private boolean shared;
+
+        Chunk() {
+            dates = new int[CHUNK_ROWS];
+            categories = new int[CHUNK_ROWS];
+            cents = new long[CHUNK_ROWS];
+            nameStarts = new int[CHUNK_ROWS];
+            nameLengths = new int[CHUNK_ROWS];
+        }
+
+        /**
+         * Copy the first rows of a chunk. The copy is not shared.
+         */
+        Chunk(Chunk chunk, int rows) {
+            dates = chunk.dates.clone();
+            categories = chunk.categories.clone();
+            cents = chunk.cents.clone();
+            nameStarts = chunk.nameStarts.clone();
+            nameLengths = new int[CHUNK_ROWS];
+            System.arraycopy(chunk.nameLengths, 0, nameLengths, 0, rows);
+            names = chunk.names;
+            namesLength = chunk.namesLength;
+            compactNames(rows, 0); // Also copies the arena
+        }
+
+        String getName(int i) {
+            return new String(names, nameStarts[i], nameLengths[i],
+                    StandardCharsets.UTF_8);
+        }
+
+        int getPackedDate(int i) {
+            return (dates[i] < 0) ? FormattedDate.UNPACKED : dates[i];
+        }
+
+        String getDateText(int i) {
+            return new String(names, nameStarts[i] + nameLengths[i],
+                    textLength(i), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Get the length of the date text of row i, 0 if the date is packed.
+         */
+        private int textLength(int i) {
+            return (dates[i] < 0) ? -dates[i] : 0;
+        }
+
+        /**
+         * Set the name of row i to length bytes of name from start, and its
+         * date to date. If date is negative, the date text is read from
+         * text at textStart.
+         */
+        void setText(int i, byte[] name, int start, int length, int date,
+                byte[] text, int textStart, int rows) {
+            // Not worth keeping if compacted
+            nameLengths[i] = 0;
+            dates[i] = 0;
+            int textLength = (date < 0) ? -date : 0;
+            if (namesLength + length + textLength > names.length) {
+                compactNames(rows, length + textLength);
+            }
+            System.arraycopy(name, start, names, namesLength, length);
+            System.arraycopy(text, textStart, names, namesLength + length,
+                    textLength);
+            nameStarts[i] = namesLength;
+            nameLengths[i] = length;
+            dates[i] = date;
+            namesLength += length + textLength;
+        }
+
+        /**
+         * Copy the names of the first rows to a new arena with room for
+         * needed more bytes. The arena only grows if the names take up more
+         * than half of it.
+         */
+        private void compactNames(int rows, int needed) {
+            int used = 0;
+            for (int r = 0; r < rows; r++) {
+                used += nameLengths[r] + textLength(r);
+            }
+            int capacity = names.length;
+            if (used + needed > capacity / 2) {
+                capacity = Math.max(capacity + (capacity >> 1),
+                        used + needed);
+            }
+            byte[] arena = new byte[capacity];
+            int length = 0;
+            for (int r = 0; r < rows; r++) {
+                int n = nameLengths[r] + textLength(r);
+                System.arraycopy(names, nameStarts[r], arena, length, n);
+                nameStarts[r] = length;
+                length += n;
+            }
+            names = arena;
+            namesLength = length;
+        }
+    }
+
+    /**
+     * The RowView of forEach(), reading straight from the columns.
+     */
+    private final class Cursor implements RowView {
+
+        private int row;
+        private Chunk chunk;
+        private int i;
+
+        @Override
+        public int getIndex() {
+            return row;
+        }
+
+        @Override
+        public int getPackedDate() {
+            return chunk.getPackedDate(i);
+        }
+
+        @Override
+        public String getDate() {
+            return getDateString(chunk, i);
+        }
+
+        @Override
+        public int getDay() {
+            return FormattedDate.unpackDay(chunk.dates[i]);
+        }
+
+        @Override
+        public int getCategoryId() {
+            return chunk.categories[i];
+        }
+
+        @Override
+        public String getCategory() {
+            return getCategoryName(chunk.categories[i]);
+        }
+
+        @Override
+        public String getName() {
+            return chunk.getName(i);
+        }
+
+        @Override
+        public long getCents() {
+            return chunk.cents[i];
+        }
+    }
+
+    private void checkIndex(int row) {
+        if (row < 0 || row >= size) {
+            throw new ArrayIndexOutOfBoundsException(row + " >= " + size);
+        }
+    }
+
+    private void checkWritable() {
+        if (dictionary == null) {
+            throw new UnsupportedOperationException("RowStore is frozen.");
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * A read-only view of one row of a BudgetList, see
+ * <code>BudgetList.forEachRow()</code>.
+ * <p>
+ * A single view is moved from row to row, so it is only valid during the
+ * call it is passed to and must not be kept. Use <code>toBudgetRow()</code>
+ * to keep a copy of a row.
+ */
+public interface RowView {
+
+    /**
+     * Get the index of the row in its list.
+     * @return Row index.
+     */
+    int getIndex();
+
+    /**
+     * Get the packed date of the row, see <code>FormattedDate.pack()</code>.
+     * @return Packed date, 0 if unknown.
+     */
+    int getPackedDate();
+
+    /**
+     * Get the formatted date of the row.
+     * @return Formatted date, "" if unknown.
+     */
+    String getDate();
+
+    /**
+     * Get the day of the month of the row.
+     * @return Day of the month, 0 if unknown.
+     */
+    int getDay();
+
+    /**
+     * Get the category id of the row.
+     * @return Id of the category in the CategoryList of the list.
+     */
+    int getCategoryId();
+
+    /**
+     * Get the category of the row.
+     * @return Category name.
+     */
+    String getCategory();
+
+    /**
+     * Get the name of the row. Unlike the other values, this creates a new
+     * String.
+     * @return Name.
+     */
+    String getName();
+
+    /**
+     * Get the amount of the row.
+     * @return Amount in cents.
+     */
+    long getCents();
+
+    /**
+     * Get the amount of the row as Money.
+     * @return The amount.
+     */
+    default Money getAmount() {
+        return Money.ofCents(getCents());
+    }
+
+    /**
+     * Copy the row.
+     * @return A new BudgetRow with the values of the row.
+     */
+    default BudgetRow toBudgetRow() {
+        return new BudgetRow(getDate(), getCategory(), getName(), getCents());
+    }
+
+}
@@ -1,9 +1,15 @@
 import javax.swing.filechooser.FileNameExtensionFilter;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileReader;
 import java.io.IOException;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Level;
 
 import static java.util.logging.Logger.getAnonymousLogger;
@@ -14,7 +20,24 @@ import static java.util.logging.Logger.getAnonymousLogger;
  */
 public class Save {
 
+    /**
+     * Format to write saves in. Reading detects the format by itself.
+     */
+    public enum Format {
+        TEXT, // v1, tab-separated lines
+        BINARY, // v2, see BinarySave
+        JSON, // see JsonSave
+        COMPRESSED // see CompressedSave
+    }
+
+    /**
+     * Binary saves at least this big are opened lazily, if enabled.
+     */
+    public static final long LAZY_SIZE = 1024 * 1024;
+
     private File saveFile;
+    private Format format = Format.BINARY;
+    private boolean lazy = true;
 
     private static final String DELIMITER = BudgetRow.DELIMITER;
 
@@ -55,61 +78,190 @@ public class Save {
      * @throws IOException Thrown by FileWriter.
      */
     public void writeSave(BudgetHandler budgetHandler) throws IOException {
+        writeSave(budgetHandler.snapshot());
+    }
+
+    /**
+     * Write a snapshot to the save file. The save is written to a temporary
+     * file in the same directory first, which then replaces the save file in
+     * one atomic move, so a failed write never leaves a truncated save.
+     * @param snapshot BudgetSnapshot to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeSave(BudgetSnapshot snapshot) throws IOException {
+        File target = saveFile;
+        File temp = File.createTempFile(target.getName(), ".tmp",
+                target.getAbsoluteFile().getParentFile());
+        try {
+            switch (format) {
+                case BINARY:
+                    getAnonymousLogger().log(Level.INFO,
+                            "Writing binary save...");
+                    BinarySave.write(temp, snapshot);
+                    break;
+                case JSON:
+                    getAnonymousLogger().log(Level.INFO,
+                            "Writing JSON save...");
+                    JsonSave.write(temp, snapshot);
+                    break;
+                case COMPRESSED:
+                    getAnonymousLogger().log(Level.INFO,
+                            "Writing compressed save...");
+                    CompressedSave.write(temp, snapshot);
+                    break;
+                default:
+                    writeText(temp, snapshot);
+                    break;
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        getAnonymousLogger().log(Level.INFO, "Writing done.");
+    }
+
+    /**
+     * Write a text (v1) save.
+     * @param f File to write.
+     * @param snapshot BudgetSnapshot to write.
+     * @throws IOException If the file cannot be written.
+     */
+    private void writeText(File f, BudgetSnapshot snapshot)
+            throws IOException {
         getAnonymousLogger().log(Level.INFO, "Writing save...");
         // SEE: SaveFormat.md
-        StringBuilder b = new StringBuilder();
-        // First section: $budgetHandler
-        writeLine(b, Double.toString(budgetHandler.getBudget()));
-        // Second section: types
-        for (String type : budgetHandler.getCategories().getList()) {
-            // Ensure that there are no separator characters in each type
-            b.append(type.replaceAll(DELIMITER, "") + DELIMITER);
-        }
-        b.append(System.lineSeparator());
+        String newLine = System.lineSeparator();
+        char delimiter = DELIMITER.charAt(0);
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelTextWriter out = new ChannelTextWriter(channel,
+                    Charset.defaultCharset());
+            // First section: $budgetHandler
+            out.append(snapshot.getBudgetAmount().toString()).append(newLine);
+            // Second section: types
+            for (String type : snapshot.getCategories()) {
+                // Ensure that there are no separator characters in each type
+                out.appendWithout(type, delimiter).append(delimiter);
+            }
+            out.append(newLine);
 
-        // Third section: budgetHandler rows
-        getAnonymousLogger().log(Level.INFO, "Writing budgetHandler rows...");
-        for (BudgetHandler.Which which : BudgetHandler.Which.values()) {
-            // Iterate through the appropriate list
-            for (BudgetRow row : budgetHandler.getBudgetRows(which)) {
-                writeLine(b, which.getName() + DELIMITER +
-                        row.toString());
+            // Third section: budgetHandler rows
+            try {
+                for (BudgetHandler.Which which
+                        : BudgetHandler.Which.values()) {
+                    snapshot.forEachRow(which, row -> {
+                        try {
+                            out.append(which.getName()).append(delimiter)
+                                    .append(row.getDate()).append(delimiter)
+                                    .append(row.getCategory())
+                                    .append(delimiter)
+                                    .append(row.getName()).append(delimiter)
+                                    .appendCents(row.getCents())
+                                    .append(newLine);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
+            out.close();
+            channel.force(false);
         }
-
-        // Finally write to file
-        getAnonymousLogger().log(Level.INFO, "Writing to file...");
-        try (FileWriter writer = new FileWriter(saveFile)) {
-            writer.write(b.toString());
-        } // Will call close() after success or fail
-        getAnonymousLogger().log(Level.INFO, "Writing done.");
     }
 
     /**
-     * Read from save file.
+     * Read from save file. Binary (v2) and compressed saves are recognized by
+     * their magic bytes and JSON saves by their opening brace; anything else
+     * is read as text (v1).
      * @param defaultCats Default category list.
      * @param t Translator to use.
      * @return Parsed budget, however, will return null if save file is null.
+     * @throws IOException If the file cannot be read.
      */
     public BudgetHandler readSave(String[] defaultCats, Translator t) throws
-            FileNotFoundException {
+            IOException {
         if (saveFile == null) {
             return null;
         }
 
         BudgetHandler budgetHandler = new BudgetHandler(defaultCats, t);
-        getAnonymousLogger().info("Reading save...");
+        readSave(budgetHandler);
+        return budgetHandler;
+    }
+
+    /**
+     * Read from save file into an existing BudgetHandler. The rows are
+     * bulk-loaded, so listeners are only notified once the whole file has
+     * been read. If a Journal exists next to the save, its changes are
+     * replayed on top.
+     * <p>
+     * Large binary saves without a Journal are opened lazily: the budget,
+     * categories and totals are read right away and the rows are paged from
+     * the file as they are shown. See <code>setLazy()</code>.
+     * @param budgetHandler BudgetHandler to add the read values to.
+     * @throws IOException If the file cannot be read.
+     */
+    public void readSave(BudgetHandler budgetHandler) throws IOException {
+        if (saveFile == null) {
+            return;
+        }
+        try (BudgetHandler.Loader loader = budgetHandler.load()) {
+            if (lazy && saveFile.length() >= LAZY_SIZE &&
+                    BinarySave.isBinary(saveFile) &&
+                    !Journal.getFile(saveFile).exists()) {
+                // Journal records refer to rows, so only open lazily when
+                // there is no journal
+                getAnonymousLogger().info("Opening binary save...");
+                BinarySave.open(saveFile, loader);
+            } else if (BinarySave.isBinary(saveFile)) {
+                getAnonymousLogger().info("Reading binary save...");
+                BinarySave.read(saveFile, loader);
+            } else if (CompressedSave.isCompressed(saveFile)) {
+                getAnonymousLogger().info("Reading compressed save...");
+                CompressedSave.read(saveFile, loader);
+            } else if (JsonSave.isJson(saveFile)) {
+                getAnonymousLogger().info("Reading JSON save...");
+                JsonSave.read(saveFile, loader);
+            } else if (saveFile.length() >= ParallelTextReader.MIN_SIZE &&
+                    ParallelTextReader.supports(Charset.defaultCharset())) {
+                getAnonymousLogger().info("Reading save in parallel...");
+                ParallelTextReader.read(saveFile, Charset.defaultCharset(),
+                        loader);
+            } else {
+                getAnonymousLogger().info("Reading save...");
+                readText(loader);
+            }
+            Journal.replay(saveFile, loader);
+        }
+    }
+
+    /**
+     * Read a text (v1) save.
+     * @param loader Loader of the BudgetHandler to add the read values to.
+     * @throws IOException If the file cannot be read.
+     */
+    private void readText(BudgetHandler.Loader loader) throws IOException {
         // SEE: SaveFormat.md
-        try (Scanner scanner = new Scanner(saveFile)) {
+        try (BufferedReader reader =
+                     new BufferedReader(new FileReader(saveFile))) {
             /**
              * Determine what to look for depending on the section.
              */
             int section = 0;
 
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
                 // Empty lines should not increment the section number
-                System.out.println(line);
                 if (line.trim().isEmpty()) {
                     continue;
                 } else if (section != 3) {
@@ -119,48 +271,79 @@ public class Save {
 
                 switch (section) {
                     case 1: // budget amount
-                        try {
-                            budgetHandler.setBudget(Double.valueOf(line));
-                        } catch (NumberFormatException e) {
-                            getAnonymousLogger().log( Level.WARNING,
-                                    "BudgetHandler couldn't be parsed because "
-                                            + e.getMessage());
-                            // Must have a value! Default to 0
-                            budgetHandler.setBudget(0);
-                        }
+                        loader.setBudget(parseBudget(line));
                         break;
                     case 2: // types...
-                        budgetHandler.getCategories().setList(
-                                line.split(DELIMITER)
-                        );
+                        loader.setCategories(line.split(DELIMITER));
                         break;
                     case 3: // budgetHandler rows...
-                        String[] split = line.split(DELIMITER);
-                        if (split.length >= 5) {
-                            // Determine budgetHandler type
-                            for (BudgetHandler.Which which :
-                                    BudgetHandler.Which.values()) {
-                                if (split[0].compareTo(which.getName()) == 0) {
-                                    // Remove 1st token and add row
-                                    budgetHandler.addBudget(which,
-                                            BudgetRow.readLine(
-                                                    line.replaceFirst(
-                                                            which.getName() +
-                                                                    DELIMITER,
-                                                            "")
-                                            )
-                                    );
-                                    break; //
-                                }
-                            }
+                        // Determine budgetHandler type
+                        BudgetHandler.Which which = getRowList(line);
+                        BudgetRow row = (which != null)
+                                ? readRow(line, which) : null;
+                        if (row != null) {
+                            loader.add(which, row);
                         }
                         break;
                 }
             }
-        } catch (FileNotFoundException fex) {
-            throw fex;
         }
-        return budgetHandler;
+    }
+
+    /**
+     * Parse a row line of a text (v1) save. Lines without every value are
+     * skipped, as a single bad line should not keep the save from opening.
+     * @param line Row line, starting with the name of its list.
+     * @param which BudgetList named at the start of the line.
+     * @return The row, or null if the line is not a valid row.
+     */
+    static BudgetRow readRow(String line, BudgetHandler.Which which) {
+        try {
+            // Remove 1st token
+            return BudgetRow.readLine(
+                    line.substring(which.getName().length() + 1));
+        } catch (IllegalArgumentException e) {
+            getAnonymousLogger().log(Level.WARNING,
+                    "Skipping malformed row: " + line);
+            return null;
+        }
+    }
+
+    /**
+     * Parse the budget line of a text (v1) save.
+     * @param line Budget line.
+     * @return The budget amount, 0 if the line is not a number.
+     */
+    static double parseBudget(String line) {
+        try {
+            return Double.valueOf(line);
+        } catch (NumberFormatException e) {
+            getAnonymousLogger().log( Level.WARNING,
+                    "BudgetHandler couldn't be parsed because "
+                            + e.getMessage());
+            // Must have a value! Default to 0
+            return 0;
+        }
+    }
+
+    /**
+     * Get the BudgetList a row line of a text (v1) save belongs to. The row
+     * itself follows the list name and a delimiter.
+     * @param line Row line.
+     * @return The BudgetList of the row, or null if it has no known one.
+     */
+    static BudgetHandler.Which getRowList(String line) {
+        int split = line.indexOf(DELIMITER);
+        if (split < 0) {
+            return null;
+        }
+        for (BudgetHandler.Which which : BudgetHandler.Which.values()) {
+            if (line.regionMatches(0, which.getName(), 0, split) &&
+                    which.getName().length() == split) {
+                return which;
+            }
+        }
+        return null;
     }
 
     /**
@@ -182,12 +365,35 @@ public class Save {
     }
 
     /**
-     * Write a line with a line separator at the end.
-     * @param b
-     * @param out
+     * Set the format used when writing.
+     * @param format Format to write.
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Get the format used when writing.
+     * @return Format to write.
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Enable or disable opening large binary saves lazily.
+     * @param lazy True to page rows from the file, false to read them all.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Check if large binary saves are opened lazily.
+     * @return True if rows are paged from the file.
      */
-    private void writeLine(StringBuilder b, String out) {
-        b.append(out + System.lineSeparator());
+    public boolean isLazy() {
+        return lazy;
     }
 
     /**
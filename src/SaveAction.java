@@ -3,22 +3,68 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Handles saving to a file properly (includes handling save dialog).
+ * <p>
+ * Once a save file has been written in full, later saves only append the
+ * changes to its Journal, until the journal is due for compaction.
+ * <p>
+ * Changes to the BudgetHandler mark it dirty, and once a save file is known
+ * the budget is saved automatically a short while after the last change.
+ * Saves are prepared on the event thread (taking a snapshot or the pending
+ * journal records) and written on a background thread, so the UI does not
+ * freeze. Progress is reported to SaveStatusListeners on the event thread.
  */
 class SaveAction implements ActionListener {
 
+    /**
+     * State of a save, reported to SaveStatusListeners.
+     */
+    public enum Status {
+        SAVING,
+        SAVED,
+        FAILED
+    }
+
+    /**
+     * Milliseconds after the last change before an autosave starts.
+     */
+    private static final int AUTOSAVE_DELAY = 3000;
+
     private BudgetHandler budgetHandler;
     private Save saveFile;
+    private Journal journal;
+    private boolean dirty = false;
+    private boolean autosave = true;
+    private final Timer autosaveTimer;
+    /**
+     * Writes saves one at a time, in the order they were requested.
+     */
+    private final ExecutorService writer =
+            Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Save writer");
+                t.setDaemon(true);
+                return t;
+            });
+    private final List<SaveStatusListener> statusListeners = new ArrayList<>();
+    private final BudgetEventListener budgetListener = this::markDirty;
+    private final CategoriesChangeListener categoriesListener =
+            this::markDirty;
 
     /**
      * Creates a SaveAction.
      * @param budgetHandler The BudgetHandler to write to a save.
      */
     public SaveAction(BudgetHandler budgetHandler) {
-        this.budgetHandler = budgetHandler;
         saveFile = new Save((File) null);
+        autosaveTimer = new Timer(AUTOSAVE_DELAY, e -> save(false));
+        autosaveTimer.setRepeats(false);
+        setBudgetHandler(budgetHandler);
     }
 
     @Override
@@ -37,17 +83,112 @@ class SaveAction implements ActionListener {
                                 System.getProperty("file.separator") +
                                 chooser.getSelectedFile().getName() +
                                 ext);
+                closeJournal();
                 // The Save has been written and is currently in use now
                 // Therefore, saveFile.isNull() == false
             }
         }
-        // Write save
-        try {
-            saveFile.writeSave(budgetHandler);
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(null,
-                    "Error: " + ex.getMessage(), "Error",
-                    JOptionPane.ERROR_MESSAGE);
+        save(true);
+    }
+
+    /**
+     * Save to the save file in the background. Does nothing if there is no
+     * save file. Must be called on the event thread.
+     * @param manual True if requested by the user, in which case errors are
+     *               also shown in a dialog.
+     */
+    public void save(boolean manual) {
+        autosaveTimer.stop();
+        if (saveFile.isNull()) {
+            return;
+        }
+        if (!manual && !dirty) {
+            return;
+        }
+        final Journal target;
+        final Write write;
+        if (journal != null && !journal.needsCompaction()) {
+            final byte[] records = journal.takePending();
+            target = journal;
+            write = () -> target.append(records);
+        } else {
+            // Compact: write everything and start an empty journal
+            final Save save = new Save(saveFile.getFile());
+            save.setFormat(saveFile.getFormat());
+            final BudgetSnapshot snapshot = budgetHandler.snapshot();
+            startJournal();
+            journal.snapshotTaken();
+            target = journal;
+            write = () -> {
+                save.writeSave(snapshot);
+                target.delete();
+            };
+        }
+        dirty = false;
+        fireStatus(Status.SAVING, "Saving...");
+        writer.execute(() -> {
+            try {
+                write.run();
+                SwingUtilities.invokeLater(() ->
+                        fireStatus(Status.SAVED, "Saved"));
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    // Recorded changes may be lost, so write in full next
+                    target.requireSnapshot();
+                    dirty = true;
+                    fireStatus(Status.FAILED, "Save failed: " +
+                            ex.getMessage());
+                    if (manual) {
+                        JOptionPane.showMessageDialog(null,
+                                "Error: " + ex.getMessage(), "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Mark the budget as changed since the last save and (re)start the
+     * autosave delay.
+     */
+    private void markDirty() {
+        dirty = true;
+        if (autosave && !saveFile.isNull()) {
+            autosaveTimer.restart();
+        }
+    }
+
+    /**
+     * Check if there are changes that have not been saved.
+     * @return True if the budget changed since the last save.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Enable or disable saving automatically after changes.
+     * @param autosave True to autosave.
+     */
+    public void setAutosave(boolean autosave) {
+        this.autosave = autosave;
+        if (!autosave) {
+            autosaveTimer.stop();
+        }
+    }
+
+    /**
+     * Add a SaveStatusListener to be told about save progress.
+     * @param l SaveStatusListener to add.
+     */
+    public void addSaveStatusListener(SaveStatusListener l) {
+        statusListeners.add(l);
+    }
+
+    private void fireStatus(Status status, String message) {
+        for (SaveStatusListener l : statusListeners) {
+            l.statusChanged(status, message);
         }
     }
 
@@ -64,17 +205,97 @@ class SaveAction implements ActionListener {
      * @param budgetHandler BudgetHandler to set to.
      */
     public void setBudgetHandler(BudgetHandler budgetHandler) {
+        closeJournal();
+        if (this.budgetHandler != null) {
+            this.budgetHandler.removeBudgetEventListener(budgetListener);
+            this.budgetHandler.getCategories().removeTypesChangeListener(
+                    categoriesListener);
+        }
         this.budgetHandler = budgetHandler;
+        budgetHandler.addBudgetEventListener(budgetListener);
+        budgetHandler.getCategories().addTypesChangeListener(
+                categoriesListener);
     }
 
     /**
-     * Set the file used by the Save.
+     * Set the file used by the Save. Changes recorded for the previous file
+     * are discarded.
      * @param f File to use.
      */
     public void setSaveFile(File f) {
+        closeJournal();
+        autosaveTimer.stop();
         saveFile.setFile(f);
     }
 
+    /**
+     * Open a save file into the BudgetHandler and use it from now on. The
+     * file is read into a new BudgetHandler first, so if it cannot be read
+     * the budget and the save file in use are left as they were, and
+     * nothing is autosaved over the file.
+     * @param f File to open.
+     * @throws IOException If the file cannot be read or is not a valid
+     * save.
+     */
+    public void open(File f) throws IOException {
+        Save reader = new Save(f);
+        reader.setLazy(saveFile.isLazy());
+        // Categories missing from the save stay as they are, as before
+        BudgetHandler opened = new BudgetHandler(
+                budgetHandler.getCategories().toArray(), new Translator());
+        try {
+            try {
+                reader.readSave(opened);
+            } catch (RuntimeException e) {
+                throw new IOException("Not a valid save: " + e, e);
+            }
+            // Nothing is journaled or autosaved to the old file from here
+            File previous = saveFile.getFile();
+            setSaveFile(f);
+            try {
+                budgetHandler.copy(opened);
+            } catch (IOException e) {
+                // The next save writes the old file in full
+                setSaveFile(previous);
+                throw e;
+            }
+        } finally {
+            opened.clear(); // Closes its paged rows
+        }
+        fileOpened();
+    }
+
+    /**
+     * Tell the SaveAction that the save file has just been read into the
+     * BudgetHandler: the budget is no longer dirty, and changes from now on
+     * are journaled.
+     */
+    public void fileOpened() {
+        autosaveTimer.stop();
+        dirty = false;
+        startJournal();
+    }
+
+    /**
+     * Start journaling changes made to the BudgetHandler, which must be up to
+     * date with the save file.
+     */
+    private void startJournal() {
+        if (journal == null && !saveFile.isNull()) {
+            journal = new Journal(saveFile.getFile(), budgetHandler);
+        }
+    }
+
+    /**
+     * Stop journaling changes.
+     */
+    private void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
     /**
      * Get the Save used.
      * @return The Save.
@@ -83,4 +304,11 @@ class SaveAction implements ActionListener {
         return saveFile;
     }
 
-}
\ No newline at end of file
+    /**
+     * A write that runs on the writer thread.
+     */
+    private interface Write {
+        void run() throws IOException;
+    }
+
+}
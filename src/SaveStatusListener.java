@@ -0,0 +1,6 @@
+/**
+ * Listener for the progress of saves made by a SaveAction.
+ */
+public interface SaveStatusListener {
+    void statusChanged(SaveAction.Status status, String message);
+}
@@ -0,0 +1,343 @@
+import java.util.Arrays;
+
+/**
+ * The rows of a BudgetList in the order of one SortType, kept as a
+ * permutation of row indexes without changing the list.
+ * <p>
+ * The sort key of every row is read once and kept in a primitive array (or
+ * an array of Strings for names and categories), so sorting never reads the
+ * list. Rows with equal keys are ordered by index, so the order is the same
+ * as a stable sort and every row has exactly one place in it. Changes to
+ * the list are applied by moving only the changed rows; see
+ * <code>rowsInserted()</code>, <code>rowsDeleted()</code> and
+ * <code>rowsUpdated()</code>.
+ */
+final class SortedOrder {
+
+    /**
+     * Changed rows, as a part of all rows, above which the whole order is
+     * sorted again rather than moving the rows one at a time.
+     */
+    private static final int RESORT_RATIO = 8;
+
+    private final BudgetList list;
+    private final BudgetList.SortType type;
+
+    /**
+     * Sort keys by row index. Only one of them is used, depending on type.
+     */
+    private long[] numbers;
+    private String[] strings;
+
+    /**
+     * Row indexes in sorted order.
+     */
+    private int[] order;
+    private int size;
+
+    /**
+     * Sorted position of every row, or null if it has to be computed.
+     */
+    private int[] positions;
+
+    /**
+     * Create the order of the rows of a list.
+     * @param list BudgetList to sort.
+     * @param type Method to sort.
+     * @throws java.io.UncheckedIOException If paged rows cannot be read.
+     */
+    SortedOrder(BudgetList list, BudgetList.SortType type) {
+        this.list = list;
+        this.type = type;
+        rebuild();
+    }
+
+    /**
+     * Get the method this order sorts by.
+     * @return Method to sort.
+     */
+    BudgetList.SortType getType() {
+        return type;
+    }
+
+    /**
+     * Get the amount of rows in the order.
+     * @return Amount of rows.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the row at a sorted position.
+     * @param position Position in the order.
+     * @return Row index in the list.
+     */
+    int getRow(int position) {
+        return order[position];
+    }
+
+    /**
+     * Get the sorted position of a row.
+     * @param row Row index in the list.
+     * @return Position in the order.
+     */
+    int getPosition(int row) {
+        if (positions == null) {
+            positions = new int[size];
+            for (int i = 0; i < size; i++) {
+                positions[order[i]] = i;
+            }
+        }
+        return positions[row];
+    }
+
+    /**
+     * Copy the order.
+     * @return New array of row indexes in sorted order.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(order, size);
+    }
+
+    /**
+     * Check if changing a column of the list can change this order.
+     * @param column Column index, or TableModelEvent.ALL_COLUMNS.
+     * @return True if the keys of the column are sorted by.
+     */
+    boolean isSortedBy(int column) {
+        return column < 0 || BudgetList.getColumn(type) == column;
+    }
+
+    /**
+     * Read every key again and sort all rows.
+     * @throws java.io.UncheckedIOException If paged rows cannot be read.
+     */
+    void rebuild() {
+        size = list.getRowCount();
+        if (isNumeric()) {
+            numbers = new long[size];
+            strings = null;
+        } else {
+            strings = new String[size];
+            numbers = null;
+        }
+        readKeys(0, size);
+        order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort();
+    }
+
+    /**
+     * Add rows that were inserted into the list.
+     * @param first First row inserted.
+     * @param last Last row inserted, inclusive.
+     */
+    void rowsInserted(int first, int last) {
+        int count = last - first + 1;
+        if (first > size || size + count != list.getRowCount()) {
+            rebuild();
+            return;
+        }
+        // Move the keys and indexes of the rows after the new ones
+        if (numbers != null) {
+            numbers = Arrays.copyOf(numbers, size + count);
+            System.arraycopy(numbers, first, numbers, last + 1,
+                    size - first);
+        } else {
+            strings = Arrays.copyOf(strings, size + count);
+            System.arraycopy(strings, first, strings, last + 1,
+                    size - first);
+        }
+        for (int i = 0; i < size; i++) {
+            if (order[i] >= first) {
+                order[i] += count;
+            }
+        }
+        readKeys(first, last + 1);
+        order = Arrays.copyOf(order, size + count);
+        if (count * RESORT_RATIO > size) {
+            for (int r = first; r <= last; r++) {
+                order[size++] = r;
+            }
+            sort();
+        } else {
+            for (int r = first; r <= last; r++) {
+                insert(r);
+            }
+        }
+        positions = null;
+    }
+
+    /**
+     * Remove rows that were deleted from the list.
+     * @param first First row deleted.
+     * @param last Last row deleted, inclusive.
+     */
+    void rowsDeleted(int first, int last) {
+        int count = last - first + 1;
+        if (last >= size || size - count != list.getRowCount()) {
+            rebuild();
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int row = order[i];
+            if (row > last) {
+                order[kept++] = row - count;
+            } else if (row < first) {
+                order[kept++] = row;
+            }
+        }
+        if (numbers != null) {
+            System.arraycopy(numbers, last + 1, numbers, first,
+                    size - last - 1);
+        } else {
+            System.arraycopy(strings, last + 1, strings, first,
+                    size - last - 1);
+            Arrays.fill(strings, kept, size, null);
+        }
+        size = kept;
+        positions = null;
+    }
+
+    /**
+     * Move rows that were changed in the list.
+     * @param first First row changed.
+     * @param last Last row changed, inclusive.
+     * @param column Column changed, or TableModelEvent.ALL_COLUMNS.
+     */
+    void rowsUpdated(int first, int last, int column) {
+        if (!isSortedBy(column)) {
+            return;
+        }
+        if (last >= size || size != list.getRowCount()) {
+            rebuild();
+            return;
+        }
+        int count = last - first + 1;
+        if (count * RESORT_RATIO > size) {
+            readKeys(first, last + 1);
+            sort();
+        } else {
+            // Take the rows out while their old keys still find them
+            for (int r = first; r <= last; r++) {
+                int i = find(r);
+                System.arraycopy(order, i + 1, order, i, size - i - 1);
+                size--;
+            }
+            readKeys(first, last + 1);
+            for (int r = first; r <= last; r++) {
+                insert(r);
+            }
+        }
+        positions = null;
+    }
+
+    private boolean isNumeric() {
+        return type != BudgetList.SortType.ALPHABETICAL &&
+                type != BudgetList.SortType.BY_CATEGORY;
+    }
+
+    /**
+     * Read the keys of the rows in [from, to).
+     */
+    private void readKeys(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        switch (type) {
+            case BY_DATE:
+                list.forEachRow(from, to, row ->
+                        numbers[row.getIndex()] = row.getPackedDate());
+                break;
+            case BY_MONEY:
+                list.forEachRow(from, to, row ->
+                        numbers[row.getIndex()] = row.getCents());
+                break;
+            case BY_MONEY_ABS:
+                list.forEachRow(from, to, row ->
+                        numbers[row.getIndex()] = Math.abs(row.getCents()));
+                break;
+            case ALPHABETICAL:
+                list.forEachRow(from, to, row ->
+                        strings[row.getIndex()] = row.getName());
+                break;
+            case BY_CATEGORY:
+                // Category names are shared, so this creates no String
+                list.forEachRow(from, to, row ->
+                        strings[row.getIndex()] = row.getCategory());
+                break;
+        }
+    }
+
+    /**
+     * Compare two rows by key and then by index.
+     */
+    private int compare(int a, int b) {
+        int c = (numbers != null) ? Long.compare(numbers[a], numbers[b])
+                : strings[a].compareTo(strings[b]);
+        return (c != 0) ? c : Integer.compare(a, b);
+    }
+
+    /**
+     * Find the position of a row, or where it belongs if it is not there.
+     */
+    private int find(int row) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(order[mid], row) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Insert a row at its place. The order must have room for it.
+     */
+    private void insert(int row) {
+        int i = find(row);
+        System.arraycopy(order, i, order, i + 1, size - i);
+        order[i] = row;
+        size++;
+    }
+
+    /**
+     * Sort the order with a merge sort, which compares the rows without
+     * boxing them.
+     */
+    private void sort() {
+        int[] buffer = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(low + 2 * width, size);
+                if (compare(order[mid - 1], order[mid]) < 0) {
+                    continue; // Already in order
+                }
+                merge(buffer, low, mid, high);
+            }
+        }
+    }
+
+    private void merge(int[] buffer, int low, int mid, int high) {
+        System.arraycopy(order, low, buffer, low, high - low);
+        int a = low;
+        int b = mid;
+        for (int i = low; i < high; i++) {
+            if (b >= high || (a < mid && compare(buffer[a], buffer[b]) < 0)) {
+                order[i] = buffer[a++];
+            } else {
+                order[i] = buffer[b++];
+            }
+        }
+    }
+
+}
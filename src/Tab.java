@@ -43,6 +43,14 @@ public class Tab {
         return selected;
     }
 
+    /**
+     * Set if the tab is the one its tabbed pane shows.
+     * @param selected True if the tab is shown.
+     */
+    public void setSelected(boolean selected) {
+        this.selected = selected;
+    }
+
     /**
      * Add a tab to a tabbed pane.
      * @param tabbedPane The tabbed pane to add a tab to.
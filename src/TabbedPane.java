@@ -53,6 +53,18 @@ public class TabbedPane extends JTabbedPane {
         for (Tab tab : tabs) {
             addTab(tab.name, tab.panel);
         }
+        // Tell the tabs which one is shown, so hidden ones can wait
+        addChangeListener(e -> updateSelected());
+        updateSelected();
+    }
+
+    /**
+     * Mark the selected tab as selected and every other tab as not.
+     */
+    private void updateSelected() {
+        for (int i = 0; i < tabs.length; i++) {
+            tabs[i].setSelected(i == getSelectedIndex());
+        }
     }
 
     /**
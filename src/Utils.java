@@ -1,6 +1,14 @@
 import com.eclipsesource.json.JsonArray;
 import com.eclipsesource.json.JsonValue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
 /**
  * Useful helper methods.
  */
@@ -19,4 +27,61 @@ public class Utils {
         return strVals;
     }
 
+    /**
+     * Check if a file starts with the given bytes.
+     * @param f File to check.
+     * @param magic Expected first bytes.
+     * @return True if the file starts with magic, false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean startsWith(File f, byte[] magic) throws IOException {
+        byte[] head = new byte[magic.length];
+        try (InputStream in = Files.newInputStream(f.toPath())) {
+            int read = 0;
+            while (read < head.length) {
+                int n = in.read(head, read, head.length - read);
+                if (n < 0) {
+                    return false;
+                }
+                read += n;
+            }
+        }
+        return Arrays.equals(head, magic);
+    }
+
+    /**
+     * Write every remaining byte of a buffer at the current position of a
+     * channel.
+     * @param channel Channel to write to.
+     * @param buf Bytes to write.
+     * @return Amount of bytes written.
+     * @throws IOException If the channel cannot be written.
+     */
+    public static long writeFully(FileChannel channel, ByteBuffer buf)
+            throws IOException {
+        long written = 0;
+        while (buf.hasRemaining()) {
+            written += channel.write(buf);
+        }
+        return written;
+    }
+
+    /**
+     * Fill the remaining space of a buffer from a position of a channel.
+     * @param channel Channel to read from.
+     * @param buf Buffer to fill.
+     * @param position Position in the channel to read from.
+     * @throws IOException If the channel cannot be read or ends first.
+     */
+    public static void readFully(FileChannel channel, ByteBuffer buf,
+            long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+            position += n;
+        }
+    }
+
 }